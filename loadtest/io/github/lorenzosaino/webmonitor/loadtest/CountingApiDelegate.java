@@ -0,0 +1,120 @@
+package io.github.lorenzosaino.webmonitor.loadtest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.ApiConfig;
+import com.google.apphosting.api.ApiProxy.Delegate;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.google.apphosting.api.ApiProxy.LogRecord;
+
+/**
+ * API proxy delegate counting the calls made to each App Engine service
+ * before forwarding them to the local service stand-ins.
+ */
+public class CountingApiDelegate implements Delegate<Environment> {
+
+	/** Package name of the datastore service calls */
+	public static final String DATASTORE = "datastore_v3";
+
+	private final Delegate<Environment> delegate;
+	private final Map<String, Long> counters = new TreeMap<String, Long>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param delegate The delegate the calls are forwarded to
+	 */
+	public CountingApiDelegate(Delegate<Environment> delegate) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("delegate cannot be null");
+		}
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Wrap the delegate currently installed in the API proxy
+	 *
+	 * @return the counting delegate installed
+	 */
+	@SuppressWarnings("unchecked")
+	public static CountingApiDelegate install() {
+		CountingApiDelegate counting = new CountingApiDelegate(
+				(Delegate<Environment>) ApiProxy.getDelegate());
+		ApiProxy.setDelegate(counting);
+		return counting;
+	}
+
+	/**
+	 * Restore the delegate wrapped in the API proxy
+	 */
+	public void uninstall() {
+		ApiProxy.setDelegate(delegate);
+	}
+
+	/**
+	 * Get the number of calls made to a service since the last reset
+	 *
+	 * @param packageName The package name of the service
+	 * @return the number of calls
+	 */
+	public synchronized long getCalls(String packageName) {
+		long calls = 0;
+		String prefix = packageName + ".";
+		for (Map.Entry<String, Long> e : counters.entrySet()) {
+			if (e.getKey().startsWith(prefix)) {
+				calls += e.getValue().longValue();
+			}
+		}
+		return calls;
+	}
+
+	/**
+	 * Reset all counters
+	 */
+	public synchronized void reset() {
+		counters.clear();
+	}
+
+	private synchronized void count(String packageName, String methodName) {
+		String key = packageName + "." + methodName;
+		Long calls = counters.get(key);
+		counters.put(key, calls == null ? 1L : calls.longValue() + 1);
+	}
+
+	@Override
+	public byte[] makeSyncCall(Environment environment, String packageName,
+			String methodName, byte[] request) {
+		count(packageName, methodName);
+		return delegate.makeSyncCall(environment, packageName, methodName,
+				request);
+	}
+
+	@Override
+	public Future<byte[]> makeAsyncCall(Environment environment,
+			String packageName, String methodName, byte[] request,
+			ApiConfig apiConfig) {
+		count(packageName, methodName);
+		return delegate.makeAsyncCall(environment, packageName, methodName,
+				request, apiConfig);
+	}
+
+	@Override
+	public void log(Environment environment, LogRecord record) {
+		delegate.log(environment, record);
+	}
+
+	@Override
+	public void flushLogs(Environment environment) {
+		delegate.flushLogs(environment);
+	}
+
+	@Override
+	public List<Thread> getRequestThreads(Environment environment) {
+		return delegate.getRequestThreads(environment);
+	}
+
+}
@@ -0,0 +1,63 @@
+package io.github.lorenzosaino.webmonitor.loadtest;
+
+import io.github.lorenzosaino.webmonitor.services.MailTransport;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+
+/**
+ * Local stand-in of the mail transport, counting the messages sent instead
+ * of delivering them, and failing a share of them transiently
+ */
+public class CountingMailTransport implements MailTransport {
+
+	private final long latencyMillis;
+	private final double failureRate;
+	private final Random random;
+	private final AtomicLong sent = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param latencyMillis The delay applied to each message sent
+	 * @param failureRate The probability a message fails to be sent
+	 * @param seed The seed of the random failures
+	 */
+	public CountingMailTransport(long latencyMillis, double failureRate,
+			long seed) {
+		this.latencyMillis = latencyMillis;
+		this.failureRate = failureRate;
+		this.random = new Random(seed);
+	}
+
+	@Override
+	public void send(Message message) throws MessagingException {
+		if (latencyMillis > 0) {
+			try {
+				Thread.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessagingException("Interrupted while sending");
+			}
+		}
+		synchronized (random) {
+			if (random.nextDouble() < failureRate) {
+				throw new MessagingException("Simulated transient failure");
+			}
+		}
+		sent.incrementAndGet();
+	}
+
+	/**
+	 * Get the number of messages sent so far
+	 *
+	 * @return the number of messages
+	 */
+	public long getSent() {
+		return sent.get();
+	}
+
+}
@@ -0,0 +1,334 @@
+package io.github.lorenzosaino.webmonitor.loadtest;
+
+import io.github.lorenzosaino.webmonitor.NotificationFanOutServlet;
+import io.github.lorenzosaino.webmonitor.NotificationServlet;
+import io.github.lorenzosaino.webmonitor.WebMonitorServlet;
+import io.github.lorenzosaino.webmonitor.services.DataStoreService;
+import io.github.lorenzosaino.webmonitor.services.NotificationQueueService;
+import io.github.lorenzosaino.webmonitor.services.NotificationService;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServlet;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+
+/**
+ * Offline load test harness.
+ *
+ * Runs complete {@link WebMonitorServlet} poll cycles against a
+ * {@link SyntheticWebServer}, with local stand-ins of the datastore, task
+ * queue and mail transport, and reports per cycle the cycle time, the fetches
+ * per second, the datastore operations and the tasks queued. After each
+ * cycle, outside of the cycle time, the tasks of the notification queue
+ * are executed by a {@link TaskDispatcher} through the
+ * {@link NotificationFanOutServlet} and the {@link NotificationServlet},
+ * which sends mail with a {@link CountingMailTransport}. Failed tasks are
+ * retried up to the retry limit of the queue.
+ *
+ * Parameters are passed as <code>name=value</code> arguments:
+ * <ul>
+ * <li><code>sites</code>: number of simulated sites (default 100)</li>
+ * <li><code>subscribers</code>: subscribers per site (default 1)</li>
+ * <li><code>cycles</code>: number of poll cycles (default 3)</li>
+ * <li><code>size</code>: body size in bytes (default 10240)</li>
+ * <li><code>latency</code>: server latency in milliseconds (default 0)</li>
+ * <li><code>changeRate</code>: probability a site changes per fetch (default 0.1)</li>
+ * <li><code>failureRate</code>: probability a fetch fails (default 0.01)</li>
+ * <li><code>seed</code>: random seed (default 1)</li>
+ * <li><code>watch</code>: watch expression of every site (default none)</li>
+ * <li><code>mailLatency</code>: mail transport latency in milliseconds (default 0)</li>
+ * <li><code>mailFailureRate</code>: probability a message fails to be sent
+ * transiently (default 0)</li>
+ * <li><code>queueXml</code>: path of the queue configuration (default
+ * <code>war/WEB-INF/queue.xml</code>)</li>
+ * <li><code>report</code>: path of a CSV file the per-cycle results are
+ * written to (default none)</li>
+ * <li><code>maxCycleMillis</code>: maximum average cycle time in
+ * milliseconds (default unbounded)</li>
+ * <li><code>maxDatastoreOps</code>: maximum average datastore operations per
+ * cycle (default unbounded)</li>
+ * </ul>
+ *
+ * The process exits with status 0 if all thresholds are met, 1 if any is
+ * exceeded and 2 if the harness cannot be run, so that it can be used as a
+ * continuous integration step.
+ */
+public class LoadTestHarness {
+
+	private static final String USER_AGENT = "gae-webmonitor-loadtest";
+	private static final String SENDER_NAME = "GAE Web monitor";
+	private static final String SENDER_EMAIL = "monitor@example.com";
+	private static final String QUEUE_XML = "war/WEB-INF/queue.xml";
+
+	private static final int EXIT_PASSED = 0;
+	private static final int EXIT_FAILED = 1;
+	private static final int EXIT_ERROR = 2;
+
+	private final Map<String, String> params;
+
+	/**
+	 * Constructor
+	 *
+	 * @param params The harness parameters
+	 */
+	public LoadTestHarness(Map<String, String> params) {
+		this.params = params;
+	}
+
+	/**
+	 * Entry point
+	 *
+	 * @param args Parameters, in the form <code>name=value</code>
+	 */
+	public static void main(String[] args) {
+		Map<String, String> params = new HashMap<String, String>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator <= 0) {
+				System.err.println("Invalid argument " + arg
+						+ ", expected name=value");
+				System.exit(EXIT_ERROR);
+			}
+			params.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		int status;
+		try {
+			status = new LoadTestHarness(params).run() ? EXIT_PASSED : EXIT_FAILED;
+		} catch (Exception e) {
+			e.printStackTrace();
+			status = EXIT_ERROR;
+		}
+		System.exit(status);
+	}
+
+	/**
+	 * Run the load test and print the report on the standard output
+	 *
+	 * @return true if all thresholds were met, false otherwise
+	 * @throws Exception if the harness cannot be run
+	 */
+	public boolean run() throws Exception {
+		int sites = getInt("sites", 100);
+		int subscribers = getInt("subscribers", 1);
+		int cycles = getInt("cycles", 3);
+		int size = getInt("size", 10240);
+		long latency = getInt("latency", 0);
+		double changeRate = getDouble("changeRate", 0.1);
+		double failureRate = getDouble("failureRate", 0.01);
+		long seed = getInt("seed", 1);
+		String watch = params.get("watch");
+		long mailLatency = getInt("mailLatency", 0);
+		double mailFailureRate = getDouble("mailFailureRate", 0);
+		String queueXml = params.containsKey("queueXml") ?
+				params.get("queueXml") : QUEUE_XML;
+		long maxCycleMillis = getInt("maxCycleMillis", Integer.MAX_VALUE);
+		long maxDatastoreOps = getInt("maxDatastoreOps", Integer.MAX_VALUE);
+		String reportPath = params.get("report");
+
+		/* Per-URI and per-task warnings would dominate the run time of
+		 * large tests */
+		Logger.getLogger(WebMonitorServlet.class.getName()).setLevel(Level.SEVERE);
+		Logger.getLogger(NotificationServlet.class.getName()).setLevel(Level.SEVERE);
+
+		LocalServiceTestHelper helper = new LocalServiceTestHelper(
+				new LocalDatastoreServiceTestConfig(),
+				new LocalTaskQueueTestConfig()
+						.setQueueXmlPath(queueXml)
+						.setDisableAutoTaskExecution(true));
+		CountingMailTransport transport = new CountingMailTransport(
+				mailLatency, mailFailureRate, seed);
+		NotificationService notifier = new NotificationService(SENDER_NAME,
+				SENDER_EMAIL, transport);
+		SyntheticWebServer web = new SyntheticWebServer(sites, size, latency,
+				changeRate, failureRate, seed);
+		helper.setUp();
+		web.start();
+		CountingApiDelegate counter = CountingApiDelegate.install();
+		PrintWriter report = null;
+		try {
+			if (reportPath != null) {
+				report = new PrintWriter(new OutputStreamWriter(
+						new FileOutputStream(reportPath), StandardCharsets.UTF_8));
+				report.println("cycle,timeMillis,fetches,fetchesPerSecond,"
+						+ "datastoreOps,queued,changes,drainMillis,retries,"
+						+ "dropped,sent");
+			}
+			populate(web.getUris(), subscribers, watch);
+			WebMonitorServlet servlet = new WebMonitorServlet();
+			servlet.init(newServletConfig(WebMonitorServlet.class));
+			NotificationFanOutServlet fanOutServlet = new NotificationFanOutServlet();
+			fanOutServlet.init(newServletConfig(NotificationFanOutServlet.class));
+			NotificationServlet notificationServlet = new NotificationServlet(
+					notifier);
+			notificationServlet.init(newServletConfig(NotificationServlet.class));
+			TaskDispatcher dispatcher = new TaskDispatcher(
+					LocalTaskQueueTestConfig.getLocalTaskQueue(),
+					NotificationQueueService.QUEUE_NAME,
+					TaskDispatcher.readRetryLimit(queueXml,
+							NotificationQueueService.QUEUE_NAME));
+			dispatcher.register(NotificationQueueService.FAN_OUT_URL,
+					fanOutServlet);
+			dispatcher.register(NotificationQueueService.WORKER_URL,
+					notificationServlet);
+
+			System.out.println("sites=" + sites + " subscribers=" + subscribers
+					+ " size=" + size + " latency=" + latency
+					+ " changeRate=" + changeRate
+					+ " failureRate=" + failureRate + " seed=" + seed
+					+ " watch=" + watch + " mailLatency=" + mailLatency
+					+ " mailFailureRate=" + mailFailureRate);
+			System.out.println(String.format(
+					"%6s %10s %8s %10s %10s %8s %8s %10s %8s %8s %8s",
+					"cycle", "time(ms)", "fetches", "fetches/s", "datastore",
+					"queued", "changes", "drain(ms)", "retries", "dropped",
+					"sent"));
+
+			long totalMillis = 0, totalFetches = 0, totalOps = 0, totalQueued = 0;
+			for (int cycle = 1; cycle <= cycles; cycle++) {
+				long fetchesBefore = web.getRequests();
+				long changesBefore = web.getChanges();
+				long sentBefore = transport.getSent();
+				long failedBefore = dispatcher.getFailed();
+				long droppedBefore = dispatcher.getDropped();
+				counter.reset();
+
+				long start = System.nanoTime();
+				servlet.poll();
+				long millis = (System.nanoTime() - start) / 1000000;
+
+				long fetches = web.getRequests() - fetchesBefore;
+				long ops = counter.getCalls(CountingApiDelegate.DATASTORE);
+
+				start = System.nanoTime();
+				long queued = dispatcher.drain();
+				long drainMillis = (System.nanoTime() - start) / 1000000;
+
+				long changes = web.getChanges() - changesBefore;
+				long sent = transport.getSent() - sentBefore;
+				long retries = dispatcher.getFailed() - failedBefore;
+				long dropped = dispatcher.getDropped() - droppedBefore;
+				System.out.println(String.format(
+						"%6d %10d %8d %10.1f %10d %8d %8d %10d %8d %8d %8d",
+						cycle, millis, fetches, rate(fetches, millis), ops,
+						queued, changes, drainMillis, retries, dropped, sent));
+				if (report != null) {
+					report.println(String.format(Locale.ROOT,
+							"%d,%d,%d,%.1f,%d,%d,%d,%d,%d,%d,%d", cycle, millis,
+							fetches, rate(fetches, millis), ops, queued,
+							changes, drainMillis, retries, dropped, sent));
+				}
+				totalMillis += millis;
+				totalFetches += fetches;
+				totalOps += ops;
+				totalQueued += queued;
+			}
+			servlet.destroy();
+			fanOutServlet.destroy();
+			notificationServlet.destroy();
+			if (cycles == 0) {
+				return true;
+			}
+			System.out.println(String.format(
+					"%6s %10d %8d %10.1f %10d %8d", "avg",
+					totalMillis / cycles, totalFetches / cycles,
+					rate(totalFetches, totalMillis), totalOps / cycles,
+					totalQueued / cycles));
+			boolean passed = true;
+			if (totalMillis / cycles > maxCycleMillis) {
+				System.out.println("FAILED: average cycle time "
+						+ totalMillis / cycles + " ms exceeds " + maxCycleMillis
+						+ " ms");
+				passed = false;
+			}
+			if (totalOps / cycles > maxDatastoreOps) {
+				System.out.println("FAILED: average datastore operations "
+						+ totalOps / cycles + " exceed " + maxDatastoreOps);
+				passed = false;
+			}
+			return passed;
+		} finally {
+			if (report != null) {
+				report.close();
+			}
+			counter.uninstall();
+			web.stop();
+			helper.tearDown();
+		}
+	}
+
+	/**
+	 * Register all URIs, each with the given number of subscribed users
+	 */
+	private static void populate(List<String> uris, int subscribers,
+			String watch) {
+		DataStoreService datastore = DataStoreService.getInstance();
+		for (int i = 0; i < subscribers; i++) {
+			datastore.addUser("user" + i + "@example.com");
+		}
+		for (String uri : uris) {
+			datastore.addObject(uri, watch);
+			for (int i = 0; i < subscribers; i++) {
+				datastore.addSubscription("user" + i + "@example.com", uri);
+			}
+		}
+	}
+
+	private static ServletConfig newServletConfig(
+			final Class<? extends HttpServlet> servlet) {
+		final Map<String, String> initParams = new HashMap<String, String>();
+		initParams.put("retriever.userAgent", USER_AGENT);
+		return new ServletConfig() {
+			@Override
+			public String getServletName() {
+				return servlet.getSimpleName();
+			}
+
+			@Override
+			public ServletContext getServletContext() {
+				return null;
+			}
+
+			@Override
+			public String getInitParameter(String name) {
+				return initParams.get(name);
+			}
+
+			@Override
+			@SuppressWarnings("rawtypes")
+			public Enumeration getInitParameterNames() {
+				return Collections.enumeration(initParams.keySet());
+			}
+		};
+	}
+
+	private static double rate(long count, long millis) {
+		return millis > 0 ? count * 1000.0 / millis : 0;
+	}
+
+	private int getInt(String name, int defaultValue) {
+		String value = params.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	private double getDouble(String name, double defaultValue) {
+		String value = params.get(name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+}
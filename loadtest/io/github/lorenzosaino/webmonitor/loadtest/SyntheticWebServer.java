@@ -0,0 +1,213 @@
+package io.github.lorenzosaino.webmonitor.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server simulating a configurable number of Web sites.
+ *
+ * Each site is served at <code>/site/&lt;n&gt;</code>. On every request a
+ * site may fail with a 503 status code or change its content, according to
+ * the configured failure and change rates.
+ */
+public class SyntheticWebServer {
+
+	private static final String SITE_PATH = "/site/";
+
+	private final int siteCount;
+	private final int contentSize;
+	private final long latencyMillis;
+	private final double changeRate;
+	private final double failureRate;
+	private final Random random;
+
+	/* Current content version of each site */
+	private final AtomicInteger[] versions;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong changes = new AtomicLong();
+
+	private HttpServer server = null;
+	private ExecutorService executor = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param siteCount The number of sites simulated
+	 * @param contentSize The size in bytes of the body of each site
+	 * @param latencyMillis The delay applied before serving each request
+	 * @param changeRate The probability a site changes on each request
+	 * @param failureRate The probability a request fails
+	 * @param seed The seed of the random generator, for reproducible runs
+	 */
+	public SyntheticWebServer(int siteCount, int contentSize,
+			long latencyMillis, double changeRate, double failureRate,
+			long seed) {
+		if (siteCount <= 0 || contentSize < 0 || latencyMillis < 0) {
+			throw new IllegalArgumentException(
+					"siteCount must be positive, contentSize and latencyMillis cannot be negative");
+		}
+		if (changeRate < 0 || changeRate > 1 || failureRate < 0 || failureRate > 1) {
+			throw new IllegalArgumentException(
+					"changeRate and failureRate must be between 0 and 1");
+		}
+		this.siteCount = siteCount;
+		this.contentSize = contentSize;
+		this.latencyMillis = latencyMillis;
+		this.changeRate = changeRate;
+		this.failureRate = failureRate;
+		this.random = new Random(seed);
+		this.versions = new AtomicInteger[siteCount];
+		for (int i = 0; i < siteCount; i++) {
+			versions[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Start the server on an ephemeral port of the loopback interface
+	 *
+	 * @throws IOException if the server socket cannot be bound
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext(SITE_PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Stop the server
+	 */
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Get the URIs of all the simulated sites
+	 *
+	 * @return the list of URIs
+	 */
+	public List<String> getUris() {
+		String base = "http://127.0.0.1:" + server.getAddress().getPort()
+				+ SITE_PATH;
+		List<String> uris = new ArrayList<String>(siteCount);
+		for (int i = 0; i < siteCount; i++) {
+			uris.add(base + i);
+		}
+		return uris;
+	}
+
+	/**
+	 * Get the number of requests received so far
+	 *
+	 * @return the number of requests
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Get the number of content changes applied so far
+	 *
+	 * @return the number of changes
+	 */
+	public long getChanges() {
+		return changes.get();
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		try {
+			requests.incrementAndGet();
+			int site = parseSite(exchange.getRequestURI().getPath());
+			if (site < 0) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			if (latencyMillis > 0) {
+				try {
+					Thread.sleep(latencyMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			if (nextDouble() < failureRate) {
+				exchange.sendResponseHeaders(503, -1);
+				return;
+			}
+			int version = versions[site].get();
+			if (nextDouble() < changeRate) {
+				version = versions[site].incrementAndGet();
+				changes.incrementAndGet();
+			}
+			byte[] body = render(site, version);
+			exchange.getResponseHeaders().set("Content-Type",
+					"text/html; charset=UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private int parseSite(String path) {
+		try {
+			int site = Integer.parseInt(path.substring(SITE_PATH.length()));
+			return (site >= 0 && site < siteCount) ? site : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private double nextDouble() {
+		synchronized (random) {
+			return random.nextDouble();
+		}
+	}
+
+	/**
+	 * Render the body of a site at a given version, padded to the configured
+	 * content size
+	 */
+	private byte[] render(int site, int version) {
+		String header = "<html><body><p>site " + site + " version " + version
+				+ "</p>";
+		String footer = "</body></html>";
+		StringBuilder builder = new StringBuilder(
+				Math.max(contentSize, header.length() + footer.length()));
+		builder.append(header);
+		int padding = contentSize - header.length() - footer.length();
+		for (int i = 0; i < padding; i++) {
+			builder.append((char) ('a' + (i % 26)));
+		}
+		builder.append(footer);
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+}
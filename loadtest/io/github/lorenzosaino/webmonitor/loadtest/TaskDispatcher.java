@@ -0,0 +1,238 @@
+package io.github.lorenzosaino.webmonitor.loadtest;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.google.appengine.api.taskqueue.dev.LocalTaskQueue;
+import com.google.appengine.api.taskqueue.dev.QueueStateInfo.TaskStateInfo;
+
+/**
+ * Executes the tasks of a local push queue through the servlets mapped to
+ * their URLs, as App Engine would.
+ *
+ * A task answered with a status code other than 2xx is retried, with the
+ * retry count set in the <code>X-AppEngine-TaskRetryCount</code> header,
+ * until the retry limit of the queue is reached. Retries are immediate: the
+ * backoff and rate limits of the queue are not simulated.
+ */
+public class TaskDispatcher {
+
+	private final LocalTaskQueue taskQueue;
+	private final String queueName;
+	private final int retryLimit;
+	private final Map<String, HttpServlet> servlets = new HashMap<String, HttpServlet>();
+	/* Failed executions of each task still in the queue */
+	private final Map<String, Integer> retries = new HashMap<String, Integer>();
+
+	private long failed = 0;
+	private long dropped = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param taskQueue The local task queue
+	 * @param queueName The name of the queue drained
+	 * @param retryLimit The maximum number of retries of a task
+	 */
+	public TaskDispatcher(LocalTaskQueue taskQueue, String queueName,
+			int retryLimit) {
+		this.taskQueue = taskQueue;
+		this.queueName = queueName;
+		this.retryLimit = retryLimit;
+	}
+
+	/**
+	 * Read the retry limit of a queue from a queue configuration file
+	 *
+	 * @param queueXml The path of <code>queue.xml</code>
+	 * @param queueName The name of the queue
+	 * @return the retry limit, or {@link Integer#MAX_VALUE} if unlimited
+	 * @throws Exception if the configuration cannot be read
+	 */
+	public static int readRetryLimit(String queueXml, String queueName)
+			throws Exception {
+		Document document = DocumentBuilderFactory.newInstance()
+				.newDocumentBuilder().parse(new File(queueXml));
+		NodeList queues = document.getElementsByTagName("queue");
+		for (int i = 0; i < queues.getLength(); i++) {
+			Element queue = (Element) queues.item(i);
+			if (!queueName.equals(text(queue, "name"))) {
+				continue;
+			}
+			String limit = text(queue, "task-retry-limit");
+			return limit == null ? Integer.MAX_VALUE : Integer.parseInt(limit);
+		}
+		throw new IllegalArgumentException("Queue " + queueName
+				+ " not found in " + queueXml);
+	}
+
+	private static String text(Element parent, String tagName) {
+		NodeList nodes = parent.getElementsByTagName(tagName);
+		return nodes.getLength() == 0 ? null
+				: nodes.item(0).getTextContent().trim();
+	}
+
+	/**
+	 * Map a servlet to the URL of the tasks it executes
+	 *
+	 * @param url The URL of the tasks
+	 * @param servlet The servlet, initialized already
+	 */
+	public void register(String url, HttpServlet servlet) {
+		servlets.put(url, servlet);
+	}
+
+	/**
+	 * Execute tasks until the queue is empty, including the tasks added by
+	 * the tasks executed
+	 *
+	 * @return the number of tasks executed, retries excluded
+	 * @throws Exception if a task cannot be dispatched
+	 */
+	public long drain() throws Exception {
+		long tasks = 0;
+		List<TaskStateInfo> pending;
+		while (!(pending = taskQueue.getQueueStateInfo().get(queueName)
+				.getTaskInfo()).isEmpty()) {
+			for (TaskStateInfo task : pending) {
+				String name = task.getTaskName();
+				Integer retryCount = retries.get(name);
+				if (retryCount == null) {
+					tasks++;
+					retryCount = 0;
+				}
+				int status = execute(task, retryCount);
+				if (status < 200 || status >= 300) {
+					failed++;
+					if (retryCount < retryLimit) {
+						retries.put(name, retryCount + 1);
+						continue;
+					}
+					dropped++;
+				}
+				retries.remove(name);
+				taskQueue.deleteTask(queueName, name);
+			}
+		}
+		return tasks;
+	}
+
+	/**
+	 * Get the number of failed task executions
+	 *
+	 * @return the number of failures
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Get the number of tasks dropped after reaching the retry limit
+	 *
+	 * @return the number of tasks
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	private int execute(TaskStateInfo task, int retryCount) throws Exception {
+		HttpServlet servlet = servlets.get(task.getUrl());
+		if (servlet == null) {
+			throw new IllegalStateException("No servlet mapped to "
+					+ task.getUrl());
+		}
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("X-AppEngine-QueueName", queueName);
+		headers.put("X-AppEngine-TaskName", task.getTaskName());
+		headers.put("X-AppEngine-TaskRetryCount", Integer.toString(retryCount));
+		Response response = new Response();
+		servlet.service(newRequest(parseForm(task.getBody()), headers),
+				newResponse(response));
+		return response.status;
+	}
+
+	private static Map<String, String> parseForm(String body) throws Exception {
+		Map<String, String> params = new HashMap<String, String>();
+		if (body == null || body.isEmpty()) {
+			return params;
+		}
+		for (String param : body.split("&")) {
+			int separator = param.indexOf('=');
+			params.put(URLDecoder.decode(param.substring(0, separator), "UTF-8"),
+					URLDecoder.decode(param.substring(separator + 1), "UTF-8"));
+		}
+		return params;
+	}
+
+	/**
+	 * Build a POST request carrying the given parameters and headers. Only
+	 * the methods used by task servlets are supported.
+	 */
+	private static HttpServletRequest newRequest(
+			final Map<String, String> params, final Map<String, String> headers) {
+		return (HttpServletRequest) Proxy.newProxyInstance(
+				TaskDispatcher.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						String name = method.getName();
+						if (name.equals("getMethod")) {
+							return "POST";
+						}
+						if (name.equals("getParameter")) {
+							return params.get(args[0]);
+						}
+						if (name.equals("getHeader")) {
+							return headers.get(args[0]);
+						}
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+
+	/**
+	 * Build a response recording its status code. Only the methods used by
+	 * task servlets are supported.
+	 */
+	private static HttpServletResponse newResponse(final Response response) {
+		return (HttpServletResponse) Proxy.newProxyInstance(
+				TaskDispatcher.class.getClassLoader(),
+				new Class<?>[] { HttpServletResponse.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						String name = method.getName();
+						if (name.equals("setStatus") || name.equals("sendError")) {
+							response.status = (Integer) args[0];
+							return null;
+						}
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+
+	private static class Response {
+
+		private int status = HttpServletResponse.SC_OK;
+
+	}
+
+}
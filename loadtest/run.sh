@@ -0,0 +1,22 @@
+#!/bin/sh
+# Compile and run the offline load test harness.
+#
+# Usage: loadtest/run.sh /path/to/appengine-java-sdk [name=value ...]
+#
+# Must be run from the project root. The exit status is the one of the
+# harness: 0 if all thresholds are met, 1 if any is exceeded, 2 on error.
+set -e
+
+if [ $# -lt 1 ]; then
+	echo "Usage: $0 /path/to/appengine-java-sdk [name=value ...]" >&2
+	exit 2
+fi
+SDK=$1
+shift
+
+CP="$SDK/lib/user/*:$SDK/lib/impl/*:$SDK/lib/testing/*:$SDK/lib/shared/*"
+mkdir -p build/loadtest
+javac -encoding UTF-8 -cp "$CP" -d build/loadtest \
+	$(find src loadtest -name '*.java') || exit 2
+exec java -cp "build/loadtest:$CP" \
+	io.github.lorenzosaino.webmonitor.loadtest.LoadTestHarness "$@"
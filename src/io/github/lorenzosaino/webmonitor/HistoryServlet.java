@@ -0,0 +1,239 @@
+package io.github.lorenzosaino.webmonitor;
+
+import io.github.lorenzosaino.webmonitor.entities.WebObjectInstance;
+import io.github.lorenzosaino.webmonitor.entities.WebObjectInstancePage;
+import io.github.lorenzosaino.webmonitor.services.DataStoreService;
+import io.github.lorenzosaino.webmonitor.services.ObjectInstanceCache;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Read API over the stored instances of Web objects.
+ *
+ * <ul>
+ * <li><code>/history/versions?uri=&amp;from=&amp;to=&amp;cursor=&amp;limit=</code>
+ * lists the metadata of the instances of an object, most recent first.
+ * <code>from</code> and <code>to</code> are milliseconds since the epoch.</li>
+ * <li><code>/history/version?id=</code> returns the content of an instance.
+ * Contents never change once stored, so they are served with a strong
+ * <code>ETag</code> and can be cached indefinitely by the client.</li>
+ * </ul>
+ *
+ * The endpoints are restricted to administrators in <code>web.xml</code>.
+ * Contents are third-party pages, so they are served in a sandbox that
+ * prevents their scripts from running in the origin of the application.
+ */
+public class HistoryServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 2379517436120850314L;
+
+	private static final int DEFAULT_LIMIT = 50;
+	private static final int MAX_LIMIT = 100;
+	/* Total compressed size of the contents cached, in bytes */
+	private static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+
+	/* Instances of services needed */
+	private DataStoreService datastore = null;
+	private ObjectInstanceCache cache = null;
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		String cacheSize = config.getInitParameter("history.cacheSize");
+
+		this.datastore = DataStoreService.getInstance();
+		this.cache = new ObjectInstanceCache(cacheSize == null ?
+				DEFAULT_CACHE_SIZE : Long.parseLong(cacheSize));
+	}
+
+	@Override
+	public void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		String path = req.getPathInfo();
+		try {
+			if ("/versions".equals(path)) {
+				listVersions(req, resp);
+			} else if ("/version".equals(path)) {
+				getVersion(req, resp);
+			} else {
+				resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			}
+		} catch (IllegalArgumentException e) {
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+		}
+	}
+
+	/**
+	 * List the metadata of a page of instances of an object
+	 */
+	private void listVersions(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		String uri = req.getParameter("uri");
+		if (uri == null) {
+			throw new IllegalArgumentException("uri parameter is required");
+		}
+		Date from = parseDate(req.getParameter("from"));
+		Date to = parseDate(req.getParameter("to"));
+		String limitParam = req.getParameter("limit");
+		int limit = limitParam == null ? DEFAULT_LIMIT :
+				Math.min(Integer.parseInt(limitParam), MAX_LIMIT);
+
+		WebObjectInstancePage page = datastore.getObjectInstances(uri, from,
+				to, req.getParameter("cursor"), limit);
+
+		/* New instances may be added at any time */
+		resp.setHeader("Cache-Control", "private, no-cache");
+		resp.setContentType("application/json");
+		resp.setCharacterEncoding("UTF-8");
+		PrintWriter out = resp.getWriter();
+		out.print("{\"uri\":");
+		out.print(quote(uri));
+		out.print(",\"versions\":[");
+		boolean first = true;
+		for (WebObjectInstance instance : page.getInstances()) {
+			if (!first) {
+				out.print(',');
+			}
+			first = false;
+			out.print("{\"id\":");
+			out.print(instance.getId());
+			out.print(",\"timestamp\":");
+			out.print(instance.getTimestamp().getTime());
+			out.print(",\"contentType\":");
+			out.print(quote(instance.getContentType()));
+			out.print(",\"statusCode\":");
+			out.print(instance.getStatusCode());
+			out.print(",\"watch\":");
+			out.print(quote(instance.getWatchExpression()));
+			out.print(",\"etag\":");
+			out.print(quote(etag(instance)));
+			out.print('}');
+		}
+		out.print("],\"cursor\":");
+		out.print(quote(page.getCursor()));
+		out.print('}');
+	}
+
+	/**
+	 * Return the content of a single instance
+	 */
+	private void getVersion(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		String idParam = req.getParameter("id");
+		if (idParam == null) {
+			throw new IllegalArgumentException("id parameter is required");
+		}
+		long id = Long.parseLong(idParam);
+		WebObjectInstance instance = cache.get(id);
+		boolean cached = instance != null;
+		if (!cached) {
+			/* Revalidations are answered from the stored digest, without
+			 * loading the content */
+			instance = datastore.getObjectInstanceMetadata(id);
+			if (instance == null) {
+				resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+		}
+
+		String etag = etag(instance);
+		boolean notModified = matches(req.getHeader("If-None-Match"), etag);
+		if (!notModified && !cached) {
+			instance = datastore.getObjectInstance(id);
+			if (instance == null) {
+				/* Removed in the meantime */
+				resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			cache.put(instance);
+		}
+		resp.setHeader("ETag", etag);
+		resp.setHeader("Cache-Control", "private, max-age=31536000, immutable");
+		if (notModified) {
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		/* Never let the browser run stored pages as part of this origin */
+		resp.setHeader("X-Content-Type-Options", "nosniff");
+		resp.setHeader("Content-Security-Policy", "sandbox");
+		String contentType = instance.getContentType();
+		resp.setContentType(contentType == null ? "text/plain" : contentType);
+		resp.setCharacterEncoding("UTF-8");
+		resp.getWriter().print(instance.getContent());
+	}
+
+	/**
+	 * Build the strong entity tag of an instance from its content digest
+	 */
+	private static String etag(WebObjectInstance instance) {
+		return "\"" + instance.getDigest() + "\"";
+	}
+
+	/**
+	 * Check whether an If-None-Match header matches an entity tag
+	 */
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Date parseDate(String millis) {
+		return millis == null ? null : new Date(Long.parseLong(millis));
+	}
+
+	/**
+	 * Encode a string as a JSON string literal
+	 */
+	private static String quote(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder builder = new StringBuilder(value.length() + 2);
+		builder.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				builder.append("\\\"");
+				break;
+			case '\\':
+				builder.append("\\\\");
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			case '\t':
+				builder.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					builder.append(String.format("\\u%04x", (int) c));
+				} else {
+					builder.append(c);
+				}
+			}
+		}
+		builder.append('"');
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,61 @@
+package io.github.lorenzosaino.webmonitor;
+
+import io.github.lorenzosaino.webmonitor.services.DataStoreService;
+import io.github.lorenzosaino.webmonitor.services.NotificationQueueService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Notification fan-out servlet, expanding the change of a Web object queued
+ * by the poller into one notification task per subscriber.
+ *
+ * Failures are reported with an error status code, so that the task queue
+ * retries the fan-out with backoff.
+ */
+public class NotificationFanOutServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -1187094425962830575L;
+	private static final Logger log =
+			Logger.getLogger(NotificationFanOutServlet.class.getName());
+
+	/* Instances of services needed */
+	private DataStoreService datastore = null;
+	private NotificationQueueService notificationQueue = null;
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+
+		/* Instantiate all services required */
+		this.datastore = DataStoreService.getInstance();
+		this.notificationQueue = new NotificationQueueService();
+	}
+
+	@Override
+	public void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		String uri = req.getParameter("uri");
+		if (uri == null) {
+			log.warning("Dropping notification fan-out without URI");
+			return;
+		}
+		try {
+			List<String> subscribers = datastore.getSubscribers(uri);
+			notificationQueue.enqueue(subscribers, uri,
+					req.getHeader("X-AppEngine-TaskName"));
+		} catch (RuntimeException e) {
+			log.warning("Could not queue notifications about changes to "
+					+ uri + ", will retry. Error: " + e.getMessage());
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package io.github.lorenzosaino.webmonitor;
+
+import io.github.lorenzosaino.webmonitor.services.NotificationService;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.mail.MessagingException;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Notification servlet, delivering the notifications of the notification
+ * queue.
+ *
+ * Transient failures are reported with an error status code, so that the
+ * task queue retries the delivery with backoff. Notifications that can
+ * never be delivered are dropped.
+ */
+public class NotificationServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 6164379380413532707L;
+	private static final Logger log =
+			Logger.getLogger(NotificationServlet.class.getName());
+
+	/* Instances of services needed */
+	private NotificationService notifier = null;
+
+	/**
+	 * Constructor
+	 */
+	public NotificationServlet() {
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param notifier The notification service used instead of the one
+	 * configured by the init parameters
+	 */
+	public NotificationServlet(NotificationService notifier) {
+		this.notifier = notifier;
+	}
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		if (this.notifier != null) {
+			return;
+		}
+		/* Get all config parameters */
+		String senderName = config.getInitParameter("notifier.senderName");
+		String senderEmail = config.getInitParameter("notifier.senderEmail");
+
+		/* Instantiate all services required */
+		this.notifier = new NotificationService(senderName, senderEmail);
+	}
+
+	@Override
+	public void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		String email = req.getParameter("email");
+		String uri = req.getParameter("uri");
+		if (email == null || uri == null) {
+			log.warning("Dropping notification without email or URI");
+			return;
+		}
+		try {
+			notifier.notifyUser(email, uri);
+		} catch (IllegalArgumentException e) {
+			log.warning("Could not notify user " + email + " about " +
+					"changes to " + uri + ". Error: " + e.getMessage());
+		} catch (MessagingException e) {
+			log.warning("Could not notify user " + email + " about " +
+					"changes to " + uri + " at attempt " +
+					(retryCount(req) + 1) + ", will retry. Error: " +
+					e.getMessage());
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+	}
+
+	private static int retryCount(HttpServletRequest req) {
+		String header = req.getHeader("X-AppEngine-TaskRetryCount");
+		try {
+			return header == null ? 0 : Integer.parseInt(header);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+}
@@ -1,8 +1,11 @@
 package io.github.lorenzosaino.webmonitor;
 
+import io.github.lorenzosaino.webmonitor.entities.WebObject;
 import io.github.lorenzosaino.webmonitor.entities.WebObjectInstance;
+import io.github.lorenzosaino.webmonitor.extractors.ContentExtractor;
+import io.github.lorenzosaino.webmonitor.extractors.ContentExtractors;
 import io.github.lorenzosaino.webmonitor.services.DataStoreService;
-import io.github.lorenzosaino.webmonitor.services.NotificationService;
+import io.github.lorenzosaino.webmonitor.services.NotificationQueueService;
 import io.github.lorenzosaino.webmonitor.services.ObjectRetrievalService;
 
 import java.io.IOException;
@@ -26,7 +29,7 @@ public class WebMonitorServlet extends HttpServlet {
 	
 	/* Instances of services needed */
 	private DataStoreService datastore = null;
-	private NotificationService notifier = null;
+	private NotificationQueueService notificationQueue = null;
 	private ObjectRetrievalService retriever = null;
 	
 	private int maxRetrievalAttempts = 2;
@@ -36,12 +39,10 @@ public class WebMonitorServlet extends HttpServlet {
 		super.init(config);
 		/* Get all config parameters */
 		String userAgent = config.getInitParameter("retriever.userAgent");
-		String senderName = config.getInitParameter("notifer.senderName");
-		String senderEmail = config.getInitParameter("notifer.senderEmail");
 		
 		/* Instantiate all services required */
 		this.datastore = DataStoreService.getInstance();
-		this.notifier = new NotificationService(senderEmail, senderName);
+		this.notificationQueue = new NotificationQueueService();
 		this.retriever = new ObjectRetrievalService(userAgent);
 	}
 	
@@ -49,30 +50,54 @@ public class WebMonitorServlet extends HttpServlet {
 	public void doGet(HttpServletRequest req, HttpServletResponse resp)
 			throws IOException {
 		log.info("Start Web tracker polling servlet");
-		run();
+		poll();
 	}
 	
 	
 	/**
-	 * Run the Web monitor poller
+	 * Run a complete poll cycle over all registered objects
 	 */
-	private void run() {
+	public void poll() {
 		int retrievalAttempts = 0;
-		WebObjectInstance oldInstance = null, newInstance = null;
-		List<String> registeredUriList = null;
-		List<String> subscriberList = null;
+		WebObjectInstance newInstance = null;
+		List<WebObject> registeredObjectList = null;
 		
-		registeredUriList = datastore.getAllRegisteredObjects();
-		for (String uri : registeredUriList) {
+		registeredObjectList = datastore.getAllRegisteredWebObjects();
+		for (WebObject object : registeredObjectList) {
+			String uri = object.getUri();
+			String watchExpression = object.getWatchExpression();
+			ContentExtractor extractor = null;
+			if (watchExpression != null) {
+				try {
+					extractor = ContentExtractors.forWatchExpression(watchExpression);
+				} catch (IllegalArgumentException e) {
+					/* Monitor the whole object instead */
+					log.warning("Invalid watch expression for object " + uri 
+							+ ". Error: " + e.getMessage());
+					watchExpression = null;
+				}
+			}
 			retrievalAttempts = 0;
+			newInstance = null;
 			do {
 				try {
-					newInstance = retriever.retrieveObject(uri);
+					newInstance = retriever.retrieveObject(uri, extractor);
+					newInstance.setWatchExpression(watchExpression);
+					break;
 				} catch (IOException e) {
 					retrievalAttempts++;
 					log.warning("I/O issue while trying to retrieve object " 
-							+ uri +	" at attempt " + (retrievalAttempts+1) +
+							+ uri +	" at attempt " + retrievalAttempts +
 							"/" + maxRetrievalAttempts);
+				} catch (RuntimeException e) {
+					/* 
+					 * Not an I/O issue, e.g. a URI that is not HTTP or an
+					 * extractor failure, which a retry would not fix
+					 */
+					log.warning("Could not retrieve object " + uri 
+							+ ". Error: " + e);
+					newInstance = null;
+					break;
 				}
 			} while(retrievalAttempts < maxRetrievalAttempts);
 			if(retrievalAttempts == maxRetrievalAttempts) {
@@ -81,42 +106,70 @@ public class WebMonitorServlet extends HttpServlet {
 						+ uri +	" because of repeated I/O errors");
 				continue;
 			}
-			oldInstance = datastore.getMostRecentObjectInstance(uri);
-			if(oldInstance == null) {
+			if (newInstance == null) {
+				/* Skip this URI */
+				continue;
+			}
+			try {
+				update(newInstance);
+			} catch (RuntimeException e) {
 				/*
-				 * This occurs only when the application is launched for the
-				 * this is the first polling since the page has been added.
-				 * Just add the object instance without sending any notification
+				 * Datastore or task queue failure. Nothing was stored, so the
+				 * change is detected again at the next poll
 				 */
-				datastore.addObjectInstance(newInstance);
-				continue;
+				log.warning("Could not update object " + uri + ". Error: " 
+						+ e.getMessage());
 			}
+		}		
+	}
 
-			boolean areObjectsEqual = compareInstances(oldInstance, newInstance);
-
-			if(areObjectsEqual) {
-				datastore.updateObjectInstanceTimestamp(oldInstance.getUri(), 
-						oldInstance.getTimestamp(), newInstance.getTimestamp());
-				continue;
-			}
+	/**
+	 * Compare a newly retrieved instance with the most recent instance
+	 * stored, store it and queue notifications if it changed
+	 * 
+	 * @param newInstance The new instance
+	 */
+	private void update(WebObjectInstance newInstance) {
+		String uri = newInstance.getUri();
+		WebObjectInstance oldInstance = 
+				datastore.getMostRecentObjectInstanceMetadata(uri);
+		if(oldInstance == null) {
+			/*
+			 * This occurs only when the application is launched for the
+			 * this is the first polling since the page has been added.
+			 * Just add the object instance without sending any notification
+			 */
 			datastore.addObjectInstance(newInstance);
-			subscriberList = datastore.getSubscribers(uri);
-			for (String email: subscriberList) {
-				try {
-					notifier.notifyUser(email, uri);
-				} catch (IllegalArgumentException e) {
-					log.warning("Could not notify user " + email + " about " +
-							"changes to " + uri + ". Error: " + e.getMessage());
-				}
-			}
-		}		
+			return;
+		}
+		if(!sameWatchExpression(oldInstance, newInstance)) {
+			/*
+			 * The watched region changed, so the instances are not
+			 * comparable. Just add the new baseline without sending any
+			 * notification
+			 */
+			datastore.addObjectInstance(newInstance);
+			return;
+		}
+
+		boolean areObjectsEqual = compareInstances(oldInstance, newInstance);
+
+		if(areObjectsEqual) {
+			datastore.updateObjectInstanceTimestamp(oldInstance.getUri(), 
+					oldInstance.getTimestamp(), newInstance.getTimestamp());
+			return;
+		}
+		/* Notifications are queued if and only if the change is stored */
+		datastore.addObjectInstance(newInstance, notificationQueue.getQueue(),
+				notificationQueue.newFanOutTask(uri));
 	}
 
 	
 	/**
 	 * Compare two Web object instances.
 	 * 
-	 * Check status codes, check when content may be null, two null contents 
+	 * Check status codes, content types and content digests, so that the
+	 * content of neither instance needs to be resolved. Two null contents 
 	 * may mean the page didn't change anyway.
 	 * 
 	 * @param a One instance
@@ -132,8 +185,8 @@ public class WebMonitorServlet extends HttpServlet {
 		int aStatusCode = a.getStatusCode();
 		int bStatusCode = b.getStatusCode();
 		
-		String aContent = a.getContent();
-		String bContent = b.getContent();
+		String aDigest = a.getDigest();
+		String bDigest = b.getDigest();
 		
 		if(aStatusCode != bStatusCode) {
 			return false;
@@ -142,13 +195,28 @@ public class WebMonitorServlet extends HttpServlet {
 				!aContentType.equals(bContentType)) {
 			return false;
 		}
-		if(aContent == null && bContent != null) {
-			return false;
+		if(aDigest == null || bDigest == null) {
+			return aDigest == bDigest;
 		}
-		if(aContent != null && bContent == null) {
-			return false;
+		return aDigest.equals(bDigest);
+	}
+
+	/**
+	 * Check whether two Web object instances were extracted with the same
+	 * watch expression
+	 * 
+	 * @param a One instance
+	 * @param b The other instance
+	 * @return true if the watch expressions match, false otherwise
+	 */
+	private static boolean sameWatchExpression(WebObjectInstance a, 
+			WebObjectInstance b) {
+		String aWatchExpression = a.getWatchExpression();
+		String bWatchExpression = b.getWatchExpression();
+		if(aWatchExpression == null) {
+			return bWatchExpression == null;
 		}
-		return aContent.equals(bContent);
+		return aWatchExpression.equals(bWatchExpression);
 	}
 	
 }
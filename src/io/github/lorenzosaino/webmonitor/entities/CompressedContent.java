@@ -0,0 +1,86 @@
+package io.github.lorenzosaino.webmonitor.entities;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content held in memory as deflated UTF-8 bytes and inflated on every
+ * resolution, so that no decoded copy is retained
+ */
+public class CompressedContent implements ContentHandle {
+
+	private final byte[] data;
+
+	/**
+	 * Constructor
+	 *
+	 * @param data The deflated UTF-8 bytes of the content
+	 */
+	public CompressedContent(byte[] data) {
+		if (data == null) {
+			throw new IllegalArgumentException("data cannot be null");
+		}
+		this.data = data;
+	}
+
+	/**
+	 * Compress a string
+	 *
+	 * @param content The string to compress
+	 * @return the compressed content
+	 */
+	public static CompressedContent compress(String content) {
+		byte[] input = content.getBytes(StandardCharsets.UTF_8);
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(input);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					Math.max(64, input.length / 4));
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return new CompressedContent(out.toByteArray());
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Get the size of the compressed content
+	 *
+	 * @return the size in bytes
+	 */
+	public int getCompressedSize() {
+		return data.length;
+	}
+
+	@Override
+	public String resolve() {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					data.length * 4);
+			byte[] buffer = new byte[4096];
+			while (!inflater.finished()) {
+				int n = inflater.inflate(buffer);
+				if (n == 0 && !inflater.finished()
+						&& (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalStateException("Truncated compressed content");
+				}
+				out.write(buffer, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Corrupted compressed content", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package io.github.lorenzosaino.webmonitor.entities;
+
+/**
+ * Handle to the content of a Web object instance, resolved only when the
+ * content is actually needed
+ */
+public interface ContentHandle {
+
+	/**
+	 * Resolve the content
+	 *
+	 * @return the string representing the content of the object
+	 */
+	public String resolve();
+
+}
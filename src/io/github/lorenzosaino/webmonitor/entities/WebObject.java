@@ -0,0 +1,44 @@
+package io.github.lorenzosaino.webmonitor.entities;
+
+/**
+ * Class representing a monitored Web object
+ */
+public class WebObject {
+
+	private String uri = null;
+	private String watchExpression = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param uri The URI of the object
+	 * @param watchExpression The expression selecting the region of the
+	 * object to monitor, or null to monitor the whole object
+	 */
+	public WebObject(String uri, String watchExpression) {
+		if(uri == null) {
+			throw new IllegalArgumentException("uri parameter cannot be null");
+		}
+		this.uri = uri;
+		this.watchExpression = watchExpression;
+	}
+
+	/**
+	 * Get the URI
+	 *
+	 * @return the uri
+	 */
+	public String getUri() {
+		return uri;
+	}
+
+	/**
+	 * Get the watch expression
+	 *
+	 * @return the watch expression, or null if the whole object is monitored
+	 */
+	public String getWatchExpression() {
+		return watchExpression;
+	}
+
+}
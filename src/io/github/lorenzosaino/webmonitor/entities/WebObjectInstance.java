@@ -1,5 +1,8 @@
 package io.github.lorenzosaino.webmonitor.entities;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 
 /**
@@ -7,33 +10,78 @@ import java.util.Date;
  */
 public class WebObjectInstance {
 
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Long id = null;
 	private String uri = null;
-	private String content = null;
+	private ContentHandle content = null;
 	private String contentType = null;
 	private Date timestamp = null;
 	private int statusCode = 0;
+	private String digest = null;
+	private String watchExpression = null;
 	
 	/**
 	 * Constructor
 	 * 
+	 * The content is held compressed in memory.
+	 * 
+	 * @param uri The URI of the object
 	 * @param content The string representing the content of the object
 	 * @param contentType The MIME type of the object
-	 * @param date The date the content was retrieved
+	 * @param timestamp The date the content was retrieved
+	 * @param statusCode The HTTP status code
 	 */
 	public WebObjectInstance(String uri, String content, String contentType,
 			Date timestamp, int statusCode) {
+		this(uri, compress(content), contentType, timestamp, statusCode, null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param uri The URI of the object
+	 * @param content The handle to the content of the object, or null if the
+	 * instance carries metadata only
+	 * @param contentType The MIME type of the object
+	 * @param timestamp The date the content was retrieved
+	 * @param statusCode The HTTP status code
+	 * @param digest The digest of the content, or null to compute it from the
+	 * content on first use
+	 */
+	public WebObjectInstance(String uri, ContentHandle content,
+			String contentType, Date timestamp, int statusCode, String digest) {
 		
-		if(uri == null || content == null || timestamp == null) {
-			throw new IllegalArgumentException("content, timestamp and uri parameters cannot be null");
+		if(uri == null || timestamp == null) {
+			throw new IllegalArgumentException("timestamp and uri parameters cannot be null");
 		}
 		this.uri = uri;
 		this.content = content;
 		this.contentType = contentType;
 		this.timestamp = timestamp;
 		this.statusCode = statusCode;
+		this.digest = digest;
 	}
 	
 	
+	/**
+	 * Get the identifier assigned by the datastore
+	 * 
+	 * @return the id, or null if the instance has not been stored yet
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * Set the identifier assigned by the datastore
+	 * 
+	 * @param id the id to set
+	 */
+	public void setId(Long id) {
+		this.id = id;
+	}
+
 	/**
 	 * Get the URI
 	 * 
@@ -54,12 +102,12 @@ public class WebObjectInstance {
 
 
 	/**
-	 * Get the content
+	 * Get the content, resolving it from its handle
 	 * 
-	 * @return the content
+	 * @return the content, or null if the instance carries metadata only
 	 */
 	public String getContent() {
-		return content;
+		return content == null ? null : content.resolve();
 	}
 	
 	/**
@@ -68,7 +116,49 @@ public class WebObjectInstance {
 	 * @param content the content to set
 	 */
 	public void setContent(String content) {
+		setContentHandle(content == null ? null : 
+				CompressedContent.compress(content));
+	}
+
+	/**
+	 * Get the handle to the content
+	 * 
+	 * @return the content handle, or null if the instance carries metadata only
+	 */
+	public ContentHandle getContentHandle() {
+		return content;
+	}
+
+	/**
+	 * Set the handle to the content
+	 * 
+	 * @param content the content handle to set
+	 */
+	public void setContentHandle(ContentHandle content) {
 		this.content = content;
+		this.digest = null;
+	}
+
+	/**
+	 * Get the digest of the content, computed on first use if it was not
+	 * stored along with the instance
+	 * 
+	 * @return the hex-encoded SHA-256 digest of the content
+	 */
+	public String getDigest() {
+		if (digest == null && content != null) {
+			digest = digest(content.resolve());
+		}
+		return digest;
+	}
+
+	/**
+	 * Set the digest of the content
+	 * 
+	 * @param digest the digest to set
+	 */
+	public void setDigest(String digest) {
+		this.digest = digest;
 	}
 	
 	/**
@@ -124,5 +214,70 @@ public class WebObjectInstance {
 	public void setStatusCode(int statusCode) {
 		this.statusCode = statusCode;
 	}
-	
+
+	/**
+	 * Get the watch expression the content was extracted with
+	 * 
+	 * @return the watch expression, or null if the content is the whole object
+	 */
+	public String getWatchExpression() {
+		return watchExpression;
+	}
+
+	/**
+	 * Set the watch expression the content was extracted with
+	 * 
+	 * @param watchExpression the watchExpression to set
+	 */
+	public void setWatchExpression(String watchExpression) {
+		this.watchExpression = watchExpression;
+	}
+
+	private static ContentHandle compress(String content) {
+		if(content == null) {
+			throw new IllegalArgumentException("content parameter cannot be null");
+		}
+		return CompressedContent.compress(content);
+	}
+
+	/**
+	 * Compute the hex-encoded SHA-256 digest of a string
+	 * 
+	 * @param content The string to digest
+	 * @return the digest
+	 */
+	public static String digest(String content) {
+		return toHex(newMessageDigest().digest(
+				content.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Get a message digest computing the same digest as {@link #digest}
+	 * over the UTF-8 bytes of a content
+	 * 
+	 * @return the message digest
+	 */
+	public static MessageDigest newMessageDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Hex-encode a hash
+	 * 
+	 * @param hash The hash
+	 * @return the hex-encoded hash
+	 */
+	public static String toHex(byte[] hash) {
+		char[] hex = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			hex[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
 }
@@ -0,0 +1,46 @@
+package io.github.lorenzosaino.webmonitor.entities;
+
+import java.util.List;
+
+/**
+ * Class representing a page of the instances of a Web object
+ */
+public class WebObjectInstancePage {
+
+	private List<WebObjectInstance> instances = null;
+	private String cursor = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param instances The instances in the page
+	 * @param cursor The cursor to the next page, or null if this is the last
+	 */
+	public WebObjectInstancePage(List<WebObjectInstance> instances,
+			String cursor) {
+		if (instances == null) {
+			throw new IllegalArgumentException("instances cannot be null");
+		}
+		this.instances = instances;
+		this.cursor = cursor;
+	}
+
+	/**
+	 * Get the instances in the page
+	 *
+	 * @return the instances
+	 */
+	public List<WebObjectInstance> getInstances() {
+		return instances;
+	}
+
+	/**
+	 * Get the cursor to the next page
+	 *
+	 * @return the cursor, or null if this is the last page
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+}
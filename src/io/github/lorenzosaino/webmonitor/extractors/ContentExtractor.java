@@ -0,0 +1,22 @@
+package io.github.lorenzosaino.webmonitor.extractors;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Extractor of the region of a Web object a watch expression refers to
+ */
+public interface ContentExtractor {
+
+	/**
+	 * Extract the watched region from a content in a single pass, reading no
+	 * further than the end of the region
+	 *
+	 * @param reader The reader of the content
+	 * @return the raw text of the region, or null if it is not found
+	 *
+	 * @throws IOException if the content cannot be read
+	 */
+	public String extract(Reader reader) throws IOException;
+
+}
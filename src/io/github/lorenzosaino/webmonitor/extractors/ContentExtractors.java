@@ -0,0 +1,52 @@
+package io.github.lorenzosaino.webmonitor.extractors;
+
+/**
+ * Factory of content extractors
+ */
+public class ContentExtractors {
+
+	private static final String CSS = "css:";
+	private static final String XPATH = "xpath:";
+	private static final String JSON = "json:";
+
+	private ContentExtractors() {
+	}
+
+	/**
+	 * Get the extractor evaluating a watch expression.
+	 *
+	 * The expression language is given by a <code>css:</code>,
+	 * <code>xpath:</code> or <code>json:</code> prefix. Without a prefix,
+	 * expressions starting with <code>$</code> are JSON paths, those starting
+	 * with <code>/</code> are XPath expressions and any other is a CSS
+	 * selector.
+	 *
+	 * @param expression The watch expression
+	 * @return the extractor
+	 *
+	 * @throws IllegalArgumentException if the expression is not supported
+	 */
+	public static ContentExtractor forWatchExpression(String expression) {
+		if (expression == null) {
+			throw new IllegalArgumentException("expression cannot be null");
+		}
+		String trimmed = expression.trim();
+		if (trimmed.startsWith(CSS)) {
+			return HtmlExtractor.fromCssSelector(trimmed.substring(CSS.length()));
+		}
+		if (trimmed.startsWith(XPATH)) {
+			return HtmlExtractor.fromXPath(trimmed.substring(XPATH.length()));
+		}
+		if (trimmed.startsWith(JSON)) {
+			return new JsonExtractor(trimmed.substring(JSON.length()));
+		}
+		if (trimmed.startsWith("$")) {
+			return new JsonExtractor(trimmed);
+		}
+		if (trimmed.startsWith("/")) {
+			return HtmlExtractor.fromXPath(trimmed);
+		}
+		return HtmlExtractor.fromCssSelector(trimmed);
+	}
+
+}
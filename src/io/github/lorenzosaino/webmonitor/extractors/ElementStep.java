@@ -0,0 +1,78 @@
+package io.github.lorenzosaino.webmonitor.extractors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Step of an element path, matching an element by name and attributes and
+ * relating it to the element matched by the previous step
+ */
+class ElementStep {
+
+	/* Whether the element must be a child, rather than a descendant, of the
+	 * element matched by the previous step (or of the document root) */
+	private final boolean child;
+	/* Element name, or null to match any element */
+	private final String name;
+	private final List<String[]> conditions = new ArrayList<String[]>();
+
+	ElementStep(boolean child, String name) {
+		this.child = child;
+		this.name = name;
+	}
+
+	boolean isChild() {
+		return child;
+	}
+
+	/**
+	 * Require an attribute to be present
+	 */
+	void requireAttribute(String attribute) {
+		conditions.add(new String[] { attribute, null, null });
+	}
+
+	/**
+	 * Require an attribute to have a given value
+	 */
+	void requireValue(String attribute, String value) {
+		conditions.add(new String[] { attribute, value, null });
+	}
+
+	/**
+	 * Require a whitespace separated attribute to include a given token
+	 */
+	void requireToken(String attribute, String token) {
+		conditions.add(new String[] { attribute, null, token });
+	}
+
+	boolean matches(String elementName, Map<String, String> attributes) {
+		if (name != null && !name.equals(elementName)) {
+			return false;
+		}
+		for (String[] condition : conditions) {
+			String value = attributes.get(condition[0]);
+			if (value == null) {
+				return false;
+			}
+			if (condition[1] != null && !condition[1].equals(value)) {
+				return false;
+			}
+			if (condition[2] != null && !hasToken(value, condition[2])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasToken(String value, String token) {
+		for (String t : value.trim().split("\\s+")) {
+			if (t.equals(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,657 @@
+package io.github.lorenzosaino.webmonitor.extractors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming HTML extractor returning the markup of the first element matching
+ * a CSS selector or an XPath expression.
+ *
+ * Supported CSS selectors are made of type, universal, id, class and
+ * attribute (<code>[attr]</code>, <code>[attr=value]</code>) selectors joined
+ * by descendant or child combinators, e.g. <code>div#main &gt; span.price</code>.
+ *
+ * Supported XPath expressions are absolute location paths made of
+ * <code>/</code> and <code>//</code> steps with attribute predicates
+ * (<code>[@attr]</code>, <code>[@attr='value']</code>), e.g.
+ * <code>//div[@id='main']/span</code>.
+ */
+public class HtmlExtractor implements ContentExtractor {
+
+	private static final Set<String> VOID_ELEMENTS = new HashSet<String>(
+			Arrays.asList("area", "base", "br", "col", "embed", "hr", "img",
+					"input", "link", "meta", "param", "source", "track", "wbr"));
+	private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<String>(
+			Arrays.asList("script", "style", "textarea", "title"));
+	/* Roots of foreign content, where a trailing slash closes any element */
+	private static final Set<String> FOREIGN_ELEMENTS = new HashSet<String>(
+			Arrays.asList("svg", "math"));
+	/* End tags implied by start tags whose end tags may be omitted */
+	private static final Map<String, ImpliedEnd> IMPLIED_ENDS =
+			new HashMap<String, ImpliedEnd>();
+
+	static {
+		String[] scope = { "applet", "caption", "html", "table", "td", "th",
+				"marquee", "object", "template" };
+		impliedEnd(new String[] { "p" }, new String[] { "p" },
+				scope, "button");
+		impliedEnd(new String[] { "li" }, new String[] { "li" },
+				scope, "ol", "ul");
+		impliedEnd(new String[] { "dt", "dd" }, new String[] { "dt", "dd" },
+				scope, "dl");
+		impliedEnd(new String[] { "option" }, new String[] { "option" },
+				scope, "select", "datalist", "optgroup");
+		impliedEnd(new String[] { "td", "th" }, new String[] { "td", "th" },
+				new String[] { "html", "table", "template" }, "tr");
+		impliedEnd(new String[] { "tr" }, new String[] { "tr", "td", "th" },
+				new String[] { "html", "table", "template" },
+				"thead", "tbody", "tfoot");
+		impliedEnd(new String[] { "thead", "tbody", "tfoot" },
+				new String[] { "thead", "tbody", "tfoot", "tr", "td", "th" },
+				new String[] { "html", "table", "template" });
+	}
+
+	private static void impliedEnd(String[] starts, String[] closes,
+			String[] scope, String... moreScope) {
+		ImpliedEnd impliedEnd = new ImpliedEnd(closes, scope, moreScope);
+		for (String start : starts) {
+			IMPLIED_ENDS.put(start, impliedEnd);
+		}
+	}
+
+	private final List<ElementStep> steps;
+
+	/**
+	 * Constructor
+	 *
+	 * @param steps The steps of the path of the element to extract
+	 */
+	HtmlExtractor(List<ElementStep> steps) {
+		if (steps == null || steps.isEmpty()) {
+			throw new IllegalArgumentException("steps cannot be empty");
+		}
+		this.steps = steps;
+	}
+
+	/**
+	 * Build an extractor from a CSS selector
+	 *
+	 * @param selector The CSS selector
+	 * @return the extractor
+	 *
+	 * @throws IllegalArgumentException if the selector is not supported
+	 */
+	public static HtmlExtractor fromCssSelector(String selector) {
+		String s = selector.trim();
+		List<ElementStep> steps = new ArrayList<ElementStep>();
+		boolean child = false;
+		int i = 0;
+		while (i < s.length()) {
+			char c = s.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+			if (c == '>') {
+				if (steps.isEmpty() || child) {
+					throw unsupported(selector, i);
+				}
+				child = true;
+				i++;
+				continue;
+			}
+			String name = null;
+			boolean empty = true;
+			if (c == '*') {
+				empty = false;
+				i++;
+			} else if (isNameChar(c, false)) {
+				int end = endOfName(s, i, false);
+				name = s.substring(i, end).toLowerCase();
+				empty = false;
+				i = end;
+			}
+			ElementStep step = new ElementStep(child, name);
+			while (i < s.length() && !Character.isWhitespace(s.charAt(i))
+					&& s.charAt(i) != '>') {
+				c = s.charAt(i);
+				if (c == '#' || c == '.') {
+					int end = endOfName(s, i + 1, false);
+					if (end == i + 1) {
+						throw unsupported(selector, i);
+					}
+					if (c == '#') {
+						step.requireValue("id", s.substring(i + 1, end));
+					} else {
+						step.requireToken("class", s.substring(i + 1, end));
+					}
+					i = end;
+				} else if (c == '[') {
+					int end = s.indexOf(']', i);
+					if (end < 0) {
+						throw unsupported(selector, i);
+					}
+					parseAttributeCondition(s.substring(i + 1, end), step,
+							selector, i);
+					i = end + 1;
+				} else {
+					throw unsupported(selector, i);
+				}
+				empty = false;
+			}
+			if (empty) {
+				throw unsupported(selector, i);
+			}
+			steps.add(step);
+			child = false;
+		}
+		if (steps.isEmpty() || child) {
+			throw new IllegalArgumentException("Incomplete CSS selector: "
+					+ selector);
+		}
+		return new HtmlExtractor(steps);
+	}
+
+	/**
+	 * Build an extractor from an XPath expression
+	 *
+	 * @param xpath The XPath expression
+	 * @return the extractor
+	 *
+	 * @throws IllegalArgumentException if the expression is not supported
+	 */
+	public static HtmlExtractor fromXPath(String xpath) {
+		String s = xpath.trim();
+		List<ElementStep> steps = new ArrayList<ElementStep>();
+		int i = 0;
+		while (i < s.length()) {
+			if (s.charAt(i) != '/') {
+				throw unsupported(xpath, i);
+			}
+			i++;
+			boolean child = true;
+			if (i < s.length() && s.charAt(i) == '/') {
+				child = false;
+				i++;
+			}
+			String name = null;
+			if (i < s.length() && s.charAt(i) == '*') {
+				i++;
+			} else {
+				int end = endOfName(s, i, true);
+				if (end == i) {
+					throw unsupported(xpath, i);
+				}
+				name = s.substring(i, end).toLowerCase();
+				i = end;
+			}
+			ElementStep step = new ElementStep(child, name);
+			while (i < s.length() && s.charAt(i) == '[') {
+				int end = s.indexOf(']', i);
+				if (end < 0) {
+					throw unsupported(xpath, i);
+				}
+				String predicate = s.substring(i + 1, end).trim();
+				if (!predicate.startsWith("@")) {
+					throw unsupported(xpath, i);
+				}
+				parseAttributeCondition(predicate.substring(1), step, xpath, i);
+				i = end + 1;
+			}
+			steps.add(step);
+		}
+		if (steps.isEmpty()) {
+			throw new IllegalArgumentException("Empty XPath expression");
+		}
+		return new HtmlExtractor(steps);
+	}
+
+	@Override
+	public String extract(Reader reader) throws IOException {
+		return new Scan(new PushbackReader(new BufferedReader(reader), 1))
+				.run();
+	}
+
+	/**
+	 * Parse a condition of the form <code>attr</code> or
+	 * <code>attr=value</code>, with an optionally quoted value
+	 */
+	private static void parseAttributeCondition(String condition,
+			ElementStep step, String expression, int position) {
+		int eq = condition.indexOf('=');
+		String attribute = (eq < 0 ? condition : condition.substring(0, eq))
+				.trim().toLowerCase();
+		if (attribute.isEmpty() || endOfName(attribute, 0, true) != attribute.length()) {
+			throw unsupported(expression, position);
+		}
+		if (eq < 0) {
+			step.requireAttribute(attribute);
+			return;
+		}
+		String value = condition.substring(eq + 1).trim();
+		if (value.length() >= 2 && (value.charAt(0) == '"' || value.charAt(0) == '\'')
+				&& value.charAt(value.length() - 1) == value.charAt(0)) {
+			value = value.substring(1, value.length() - 1);
+		}
+		step.requireValue(attribute, value);
+	}
+
+	/* Colons introduce pseudo-classes in CSS but are valid in XML names */
+	private static boolean isNameChar(char c, boolean colon) {
+		return Character.isLetterOrDigit(c) || c == '-' || c == '_'
+				|| (colon && c == ':');
+	}
+
+	private static int endOfName(String s, int start, boolean colon) {
+		int i = start;
+		while (i < s.length() && isNameChar(s.charAt(i), colon)) {
+			i++;
+		}
+		return i;
+	}
+
+	private static IllegalArgumentException unsupported(String expression,
+			int position) {
+		return new IllegalArgumentException("Unsupported expression "
+				+ expression + " at position " + position);
+	}
+
+	/**
+	 * Elements closed by a start tag, when open within its scope. E.g. a
+	 * <code>tr</code> start tag closes the open row and its cells, but not
+	 * those of an enclosing table.
+	 */
+	private static class ImpliedEnd {
+
+		private final Set<String> closes;
+		private final Set<String> scope;
+
+		public ImpliedEnd(String[] closes, String[] scope, String[] moreScope) {
+			this.closes = new HashSet<String>(Arrays.asList(closes));
+			this.scope = new HashSet<String>(Arrays.asList(scope));
+			this.scope.addAll(Arrays.asList(moreScope));
+		}
+
+	}
+
+	/**
+	 * Element open at some point of the scan
+	 *
+	 * The steps of the path matched are worked out from those of the parent
+	 * when the element is opened, so that matching never walks the stack.
+	 */
+	private static class Element {
+
+		private final String name;
+		/* Whether the element is or is nested in a foreign element */
+		private final boolean foreign;
+		/* Whether the element matches each step of the path */
+		private final boolean[] matched;
+		/* Whether the element or one of its ancestors matches each step */
+		private final boolean[] reachable;
+
+		public Element(String name, Map<String, String> attributes,
+				Element parent, List<ElementStep> steps) {
+			this.name = name;
+			this.foreign = FOREIGN_ELEMENTS.contains(name)
+					|| (parent != null && parent.foreign);
+			this.matched = new boolean[steps.size()];
+			this.reachable = new boolean[steps.size()];
+			for (int i = 0; i < steps.size(); i++) {
+				ElementStep step = steps.get(i);
+				if (!step.matches(name, attributes)) {
+					matched[i] = false;
+				} else if (i == 0) {
+					matched[i] = !step.isChild() || parent == null;
+				} else if (step.isChild()) {
+					matched[i] = parent != null && parent.matched[i - 1];
+				} else {
+					matched[i] = parent != null && parent.reachable[i - 1];
+				}
+				reachable[i] = matched[i]
+						|| (parent != null && parent.reachable[i]);
+			}
+		}
+
+		/**
+		 * Whether the element matches the whole path
+		 */
+		public boolean matchesPath() {
+			return matched[matched.length - 1];
+		}
+
+	}
+
+	/**
+	 * State of a single extraction
+	 */
+	private class Scan {
+
+		private final PushbackReader in;
+		private final List<Element> stack = new ArrayList<Element>();
+		/* Markup of the matched element, null until an element matches */
+		private StringBuilder capture = null;
+		private int captureDepth = -1;
+
+		public Scan(PushbackReader in) {
+			this.in = in;
+		}
+
+		public String run() throws IOException {
+			int c;
+			while ((c = in.read()) != -1) {
+				if (c != '<') {
+					append((char) c);
+					continue;
+				}
+				int next = in.read();
+				String result = null;
+				if (next == '/') {
+					String tag = readTag();
+					result = endTag(tagName(tag), "</" + tag + ">");
+				} else if (next == '!' || next == '?') {
+					append("<" + (char) next + readDeclaration(next == '!'));
+				} else if (next != -1 && Character.isLetter(next)) {
+					in.unread(next);
+					result = startTag(readTag());
+				} else {
+					append('<');
+					if (next != -1) {
+						in.unread(next);
+					}
+				}
+				if (result != null) {
+					return result;
+				}
+			}
+			return capture == null ? null : capture.toString();
+		}
+
+		private String startTag(String tag) throws IOException {
+			String name = tagName(tag);
+			Map<String, String> attributes = new HashMap<String, String>();
+			/* As in HTML parsers, a trailing slash closes only void elements
+			 * and elements of foreign content: <div/> still has content */
+			boolean selfClosing = parseAttributes(tag, name.length(), attributes)
+					&& (FOREIGN_ELEMENTS.contains(name) || inForeignContent());
+			String raw = "<" + tag + ">";
+			ImpliedEnd impliedEnd = IMPLIED_ENDS.get(name);
+			if (impliedEnd != null) {
+				int index = findImpliedEnd(impliedEnd);
+				if (index >= 0) {
+					String result = close(index);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+			Element element = new Element(name, attributes, top(), steps);
+			stack.add(element);
+			int depth = stack.size() - 1;
+			if (capture == null && element.matchesPath()) {
+				capture = new StringBuilder();
+				captureDepth = depth;
+			}
+			append(raw);
+			if (selfClosing || VOID_ELEMENTS.contains(name)) {
+				return close(depth);
+			}
+			if (RAW_TEXT_ELEMENTS.contains(name)) {
+				return rawText(name);
+			}
+			return null;
+		}
+
+		/**
+		 * Find the outermost element closed by an implied end within its
+		 * scope
+		 *
+		 * @return the depth of the element, or -1 if none is open
+		 */
+		private int findImpliedEnd(ImpliedEnd impliedEnd) {
+			int index = -1;
+			for (int i = stack.size() - 1; i >= 0; i--) {
+				String open = stack.get(i).name;
+				if (impliedEnd.closes.contains(open)) {
+					index = i;
+				} else if (impliedEnd.scope.contains(open)) {
+					break;
+				}
+			}
+			return index;
+		}
+
+		private String endTag(String name, String raw) {
+			int index = -1;
+			for (int i = stack.size() - 1; i >= 0; i--) {
+				if (stack.get(i).name.equals(name)) {
+					index = i;
+					break;
+				}
+			}
+			if (index < 0) {
+				/* Stray end tag */
+				append(raw);
+				return null;
+			}
+			if (capture == null || index >= captureDepth) {
+				append(raw);
+			}
+			return close(index);
+		}
+
+		/**
+		 * Close the element at the given depth and all its descendants
+		 *
+		 * @return the captured markup if the matched element was closed
+		 */
+		private String close(int depth) {
+			while (stack.size() > depth) {
+				stack.remove(stack.size() - 1);
+			}
+			if (capture != null && depth <= captureDepth) {
+				return capture.toString();
+			}
+			return null;
+		}
+
+		/**
+		 * Consume the content of a raw text element up to its end tag
+		 */
+		private String rawText(String name) throws IOException {
+			String pattern = "</" + name;
+			StringBuilder pending = new StringBuilder();
+			int c;
+			while ((c = in.read()) != -1) {
+				if (Character.toLowerCase((char) c) == pattern.charAt(pending.length())) {
+					pending.append((char) c);
+				} else {
+					append(pending);
+					pending.setLength(0);
+					if (c == '<') {
+						pending.append('<');
+					} else {
+						append((char) c);
+					}
+					continue;
+				}
+				if (pending.length() < pattern.length()) {
+					continue;
+				}
+				int next = in.read();
+				if (next == '>' || next == '/' || (next != -1
+						&& Character.isWhitespace(next))) {
+					String rest = next == '>' ? "" : (char) next + readTag();
+					return endTag(name, pending + rest + ">");
+				}
+				append(pending);
+				pending.setLength(0);
+				if (next != -1) {
+					in.unread(next);
+				}
+			}
+			append(pending);
+			return null;
+		}
+
+		/**
+		 * Read a tag up to the closing angle bracket, which is consumed but
+		 * not returned
+		 */
+		private String readTag() throws IOException {
+			StringBuilder tag = new StringBuilder();
+			char quote = 0;
+			int c;
+			while ((c = in.read()) != -1) {
+				if (quote != 0) {
+					if (c == quote) {
+						quote = 0;
+					}
+				} else if (c == '"' || c == '\'') {
+					quote = (char) c;
+				} else if (c == '>') {
+					break;
+				}
+				tag.append((char) c);
+			}
+			return tag.toString();
+		}
+
+		/**
+		 * Read a comment, a declaration or a processing instruction,
+		 * including its terminator
+		 */
+		private String readDeclaration(boolean bang) throws IOException {
+			StringBuilder declaration = new StringBuilder();
+			int c;
+			while ((c = in.read()) != -1) {
+				declaration.append((char) c);
+				if (bang && declaration.length() == 2
+						&& declaration.toString().equals("--")) {
+					/* Comment, terminated by --> */
+					while ((c = in.read()) != -1) {
+						declaration.append((char) c);
+						int n = declaration.length();
+						if (c == '>' && n >= 5 && declaration.charAt(n - 2) == '-'
+								&& declaration.charAt(n - 3) == '-') {
+							break;
+						}
+					}
+					break;
+				}
+				if (c == '>') {
+					break;
+				}
+			}
+			return declaration.toString();
+		}
+
+		private boolean inForeignContent() {
+			Element top = top();
+			return top != null && top.foreign;
+		}
+
+		/**
+		 * Get the innermost open element
+		 *
+		 * @return the element, or null if none is open
+		 */
+		private Element top() {
+			return stack.isEmpty() ? null : stack.get(stack.size() - 1);
+		}
+
+		private void append(char c) {
+			if (capture != null) {
+				capture.append(c);
+			}
+		}
+
+		private void append(CharSequence s) {
+			if (capture != null) {
+				capture.append(s);
+			}
+		}
+
+	}
+
+	private static String tagName(String tag) {
+		int end = 0;
+		while (end < tag.length() && !Character.isWhitespace(tag.charAt(end))
+				&& tag.charAt(end) != '/') {
+			end++;
+		}
+		return tag.substring(0, end).toLowerCase();
+	}
+
+	/**
+	 * Parse the attributes of a start tag
+	 *
+	 * @param tag The start tag, without angle brackets
+	 * @param start The index of the first character after the tag name
+	 * @param attributes The map the attributes are added to
+	 * @return true if the tag ends with a slash that is not part of an
+	 * unquoted attribute value
+	 */
+	private static boolean parseAttributes(String tag, int start,
+			Map<String, String> attributes) {
+		boolean selfClosing = false;
+		int i = start;
+		int n = tag.length();
+		while (i < n) {
+			while (i < n && (Character.isWhitespace(tag.charAt(i))
+					|| tag.charAt(i) == '/')) {
+				selfClosing = tag.charAt(i) == '/';
+				i++;
+			}
+			int nameStart = i;
+			while (i < n && !Character.isWhitespace(tag.charAt(i))
+					&& tag.charAt(i) != '=' && tag.charAt(i) != '/') {
+				i++;
+			}
+			if (i == nameStart) {
+				break;
+			}
+			selfClosing = false;
+			String name = tag.substring(nameStart, i).toLowerCase();
+			while (i < n && Character.isWhitespace(tag.charAt(i))) {
+				i++;
+			}
+			String value = "";
+			if (i < n && tag.charAt(i) == '=') {
+				i++;
+				while (i < n && Character.isWhitespace(tag.charAt(i))) {
+					i++;
+				}
+				if (i < n && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+					char quote = tag.charAt(i);
+					int end = tag.indexOf(quote, i + 1);
+					if (end < 0) {
+						end = n;
+					}
+					value = tag.substring(i + 1, end);
+					i = end + 1;
+				} else {
+					int valueStart = i;
+					while (i < n && !Character.isWhitespace(tag.charAt(i))) {
+						i++;
+					}
+					value = tag.substring(valueStart, i);
+				}
+			}
+			if (!attributes.containsKey(name)) {
+				attributes.put(name, value);
+			}
+		}
+		return selfClosing;
+	}
+
+}
@@ -0,0 +1,343 @@
+package io.github.lorenzosaino.webmonitor.extractors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming JSON extractor returning the raw text of the value at a JSON
+ * path.
+ *
+ * Supported paths start with <code>$</code> and are made of member
+ * (<code>.name</code>, <code>['name']</code>) and array index
+ * (<code>[n]</code>) steps, e.g. <code>$.items[0].price</code>.
+ */
+public class JsonExtractor implements ContentExtractor {
+
+	private static final Pattern NUMBER = Pattern.compile(
+			"-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+	/* Member names (String) and array indexes (Integer) */
+	private final List<Object> segments = new ArrayList<Object>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param path The JSON path of the value to extract
+	 *
+	 * @throws IllegalArgumentException if the path is not supported
+	 */
+	public JsonExtractor(String path) {
+		String s = path.trim();
+		if (!s.startsWith("$")) {
+			throw new IllegalArgumentException("JSON path must start with $: "
+					+ path);
+		}
+		int i = 1;
+		while (i < s.length()) {
+			char c = s.charAt(i);
+			if (c == '.') {
+				int end = i + 1;
+				while (end < s.length() && s.charAt(end) != '.'
+						&& s.charAt(end) != '[') {
+					end++;
+				}
+				if (end == i + 1) {
+					throw unsupported(path, i);
+				}
+				segments.add(s.substring(i + 1, end));
+				i = end;
+			} else if (c == '[') {
+				int end = s.indexOf(']', i);
+				if (end < 0) {
+					throw unsupported(path, i);
+				}
+				String index = s.substring(i + 1, end).trim();
+				if (index.length() >= 2 && (index.charAt(0) == '\'' || index.charAt(0) == '"')
+						&& index.charAt(index.length() - 1) == index.charAt(0)) {
+					segments.add(index.substring(1, index.length() - 1));
+				} else {
+					try {
+						segments.add(Integer.valueOf(index));
+					} catch (NumberFormatException e) {
+						throw unsupported(path, i);
+					}
+				}
+				i = end + 1;
+			} else {
+				throw unsupported(path, i);
+			}
+		}
+	}
+
+	@Override
+	public String extract(Reader reader) throws IOException {
+		Scan scan = new Scan(new BufferedReader(reader));
+		try {
+			scan.next();
+			scan.value(0);
+		} catch (MalformedJsonException e) {
+			return null;
+		}
+		return scan.result;
+	}
+
+	private static IllegalArgumentException unsupported(String path,
+			int position) {
+		return new IllegalArgumentException("Unsupported JSON path " + path
+				+ " at position " + position);
+	}
+
+	private static class MalformedJsonException extends RuntimeException {
+
+		private static final long serialVersionUID = -2250185581262919263L;
+
+	}
+
+	/**
+	 * State of a single extraction. Parsing stops as soon as the value is
+	 * extracted, without consuming the rest of the input.
+	 */
+	private class Scan {
+
+		private final Reader in;
+		/* Current character, -1 at the end of the input */
+		private int ch;
+		/* Raw text of the value being extracted */
+		private StringBuilder capture = null;
+		private String result = null;
+
+		public Scan(Reader in) {
+			this.in = in;
+		}
+
+		/**
+		 * Move past the current character, capturing it if needed
+		 */
+		private void next() throws IOException {
+			if (capture != null && ch != -1) {
+				capture.append((char) ch);
+			}
+			ch = in.read();
+		}
+
+		private void skipWhitespace() throws IOException {
+			while (ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r') {
+				next();
+			}
+		}
+
+		private void expect(char c) throws IOException {
+			if (ch != c) {
+				throw new MalformedJsonException();
+			}
+			next();
+		}
+
+		/**
+		 * Parse a value
+		 *
+		 * Only containers on the path are parsed recursively, so the
+		 * recursion depth is bounded by the length of the path whatever the
+		 * nesting of the input.
+		 *
+		 * @param depth The number of path segments matched by the location
+		 * of the value, or -1 if the location is off the path
+		 */
+		private void value(int depth) throws IOException {
+			skipWhitespace();
+			boolean target = depth == segments.size();
+			if (target) {
+				capture = new StringBuilder();
+			}
+			if (!target && depth >= 0 && ch == '{') {
+				object(depth);
+			} else if (!target && depth >= 0 && ch == '[') {
+				array(depth);
+			} else {
+				skipValue();
+			}
+			if (target) {
+				result = capture.toString();
+				capture = null;
+			}
+		}
+
+		private void object(int depth) throws IOException {
+			next();
+			skipWhitespace();
+			if (ch == '}') {
+				next();
+				return;
+			}
+			while (true) {
+				skipWhitespace();
+				String name = string();
+				skipWhitespace();
+				expect(':');
+				boolean onPath = depth >= 0 && name.equals(segments.get(depth));
+				value(onPath ? depth + 1 : -1);
+				if (result != null) {
+					return;
+				}
+				skipWhitespace();
+				if (ch == ',') {
+					next();
+				} else {
+					expect('}');
+					return;
+				}
+			}
+		}
+
+		private void array(int depth) throws IOException {
+			next();
+			skipWhitespace();
+			if (ch == ']') {
+				next();
+				return;
+			}
+			for (int index = 0; ; index++) {
+				boolean onPath = depth >= 0
+						&& Integer.valueOf(index).equals(segments.get(depth));
+				value(onPath ? depth + 1 : -1);
+				if (result != null) {
+					return;
+				}
+				skipWhitespace();
+				if (ch == ',') {
+					next();
+				} else {
+					expect(']');
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Consume a value, keeping the containers it is nested in on an
+		 * explicit stack rather than on the call stack
+		 */
+		private void skipValue() throws IOException {
+			/* Open containers, as their opening characters */
+			StringBuilder open = new StringBuilder();
+			while (true) {
+				skipWhitespace();
+				if (ch == '{' || ch == '[') {
+					char c = (char) ch;
+					next();
+					skipWhitespace();
+					if (ch != (c == '{' ? '}' : ']')) {
+						open.append(c);
+						if (c == '{') {
+							memberName();
+						}
+						continue;
+					}
+					next();
+				} else if (ch == '"') {
+					string();
+				} else {
+					scalar();
+				}
+				/* Close the containers ending after the value */
+				while (open.length() > 0) {
+					char c = open.charAt(open.length() - 1);
+					skipWhitespace();
+					if (ch == ',') {
+						next();
+						if (c == '{') {
+							memberName();
+						}
+						break;
+					}
+					expect(c == '{' ? '}' : ']');
+					open.setLength(open.length() - 1);
+				}
+				if (open.length() == 0) {
+					return;
+				}
+			}
+		}
+
+		private void memberName() throws IOException {
+			skipWhitespace();
+			string();
+			skipWhitespace();
+			expect(':');
+		}
+
+		private String string() throws IOException {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while (ch != '"') {
+				if (ch == -1) {
+					throw new MalformedJsonException();
+				}
+				if (ch == '\\') {
+					next();
+					switch (ch) {
+					case 'b':
+						value.append('\b');
+						break;
+					case 'f':
+						value.append('\f');
+						break;
+					case 'n':
+						value.append('\n');
+						break;
+					case 'r':
+						value.append('\r');
+						break;
+					case 't':
+						value.append('\t');
+						break;
+					case 'u':
+						StringBuilder hex = new StringBuilder(4);
+						for (int i = 0; i < 4; i++) {
+							next();
+							hex.append((char) ch);
+						}
+						try {
+							value.append((char) Integer.parseInt(hex.toString(), 16));
+						} catch (NumberFormatException e) {
+							throw new MalformedJsonException();
+						}
+						break;
+					case -1:
+						throw new MalformedJsonException();
+					default:
+						value.append((char) ch);
+					}
+				} else {
+					value.append((char) ch);
+				}
+				next();
+			}
+			next();
+			return value.toString();
+		}
+
+		/**
+		 * Consume a literal or a number
+		 */
+		private void scalar() throws IOException {
+			StringBuilder token = new StringBuilder();
+			while (ch != -1 && ch != ',' && ch != '}' && ch != ']'
+					&& ch != ' ' && ch != '\t' && ch != '\n' && ch != '\r') {
+				token.append((char) ch);
+				next();
+			}
+			String s = token.toString();
+			if (!s.equals("true") && !s.equals("false") && !s.equals("null")
+					&& !NUMBER.matcher(s).matches()) {
+				throw new MalformedJsonException();
+			}
+		}
+
+	}
+
+}
@@ -1,22 +1,36 @@
 package io.github.lorenzosaino.webmonitor.services;
 
+import io.github.lorenzosaino.webmonitor.entities.ContentHandle;
+import io.github.lorenzosaino.webmonitor.entities.WebObject;
 import io.github.lorenzosaino.webmonitor.entities.WebObjectInstance;
+import io.github.lorenzosaino.webmonitor.entities.WebObjectInstancePage;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
 import com.google.appengine.api.datastore.Query.Filter;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.datastore.Text;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.TaskOptions;
 
 /**
  * Data store access service
@@ -27,6 +41,10 @@ public class DataStoreService {
 	private static final String OBJECT = "Object";
 	private static final String SUBSCRIPTION = "Subscription";
 	private static final String OBJECT_INSTANCE = "ObjectInstance";
+	/* Content of an object instance, stored as a child of the instance so
+	 * that instance queries never load it */
+	private static final String OBJECT_INSTANCE_CONTENT = "ObjectInstanceContent";
+	private static final long CONTENT_ID = 1;
 
 	private DatastoreService datastoreService = null;
 	private static DataStoreService instance = null;
@@ -56,14 +74,51 @@ public class DataStoreService {
 	 * @param uri The URI of the object
 	 */
 	public void addObject(String uri) {
+		addObject(uri, null);
+	}
+
+	/**
+	 * Add a new object, monitoring only the region selected by a watch
+	 * expression
+	 * 
+	 * @param uri The URI of the object
+	 * @param watchExpression The watch expression, or null to monitor the
+	 * whole object
+	 */
+	public void addObject(String uri, String watchExpression) {
 		if (isObjectRegistered(uri)) {
 			return;
 		}
 		Entity webObject = new Entity(OBJECT);
 		webObject.setProperty("uri", uri);
+		if (watchExpression != null) {
+			webObject.setUnindexedProperty("watch", watchExpression);
+		}
 		datastoreService.put(webObject);
 	}
 
+	/**
+	 * Set the watch expression of an object
+	 * 
+	 * @param uri The URI of the object
+	 * @param watchExpression The watch expression, or null to monitor the
+	 * whole object
+	 */
+	public void setWatchExpression(String uri, String watchExpression) {
+		Filter uriFilter = new FilterPredicate("uri", FilterOperator.EQUAL, uri);
+		Query query = new Query(OBJECT).setFilter(uriFilter);
+		Entity object = datastoreService.prepare(query).asSingleEntity();
+		if (object == null) {
+			throw new IllegalArgumentException("The object is not registered");
+		}
+		if (watchExpression == null) {
+			object.removeProperty("watch");
+		} else {
+			object.setUnindexedProperty("watch", watchExpression);
+		}
+		datastoreService.put(object);
+	}
+
 	/**
 	 * Remove an object from the datastore
 	 * 
@@ -77,13 +132,14 @@ public class DataStoreService {
 		Filter uriFilter = new FilterPredicate("uri", FilterOperator.EQUAL, uri);
 		Query instanceQuery = new Query(OBJECT_INSTANCE)
 				.setFilter(uriFilter)
-				.addSort("timestamp", SortDirection.DESCENDING);
+				.setKeysOnly();
 		List<Entity> instances = datastoreService
 				.prepare(instanceQuery)
 				.asList(FetchOptions.Builder.withDefaults());
 		List<Key> keys = new ArrayList<Key>();
 		for (Entity e : instances) {
 			keys.add(e.getKey());
+			keys.add(contentKey(e.getKey()));
 		}
 		datastoreService.delete(keys);
 		
@@ -122,12 +178,47 @@ public class DataStoreService {
 		return registeredUri;
 	}
 
+	/**
+	 * Get all objects registered, along with their watch expressions
+	 * 
+	 * @return The list of all objects registered
+	 */
+	public List<WebObject> getAllRegisteredWebObjects() {
+		Query query = new Query(OBJECT);
+		List<Entity> instances = datastoreService.prepare(query).asList(
+				FetchOptions.Builder.withDefaults());
+		List<WebObject> registered = new ArrayList<WebObject>();
+		for (Entity e : instances) {
+			registered.add(new WebObject((String) e.getProperty("uri"),
+					(String) e.getProperty("watch")));
+		}
+		return registered;
+	}
+
 	/**
 	 * Add object instance
 	 * 
+	 * The instance and its content are stored atomically, the content in a
+	 * separate entity.
+	 * 
 	 * @param instance The object instance
 	 */
 	public void addObjectInstance(WebObjectInstance instance) {
+		addObjectInstance(instance, null, null);
+	}
+
+	/**
+	 * Add object instance and, in the same transaction, a task to a queue
+	 * 
+	 * The task is added only if the instance is stored, and the instance is
+	 * stored only if the task is added.
+	 * 
+	 * @param instance The object instance
+	 * @param queue The queue, or null to add no task
+	 * @param task The task
+	 */
+	public void addObjectInstance(WebObjectInstance instance, Queue queue,
+			TaskOptions task) {
 		String uri = instance.getUri();
 		// Also insert object if not present yet
 		if (!isObjectRegistered(uri)) {
@@ -135,13 +226,30 @@ public class DataStoreService {
 		}
 		Entity webObjectInstance = new Entity(OBJECT_INSTANCE);
 		webObjectInstance.setProperty("uri", instance.getUri());
-		webObjectInstance.setProperty("content",
-				new Text(instance.getContent()));
 		webObjectInstance.setProperty("contentType", instance.getContentType());
 		webObjectInstance.setProperty("timestamp", instance.getTimestamp());
 		webObjectInstance.setProperty("statusCode", instance.getStatusCode());
-		datastoreService.put(webObjectInstance);
-
+		webObjectInstance.setUnindexedProperty("digest", instance.getDigest());
+		if (instance.getWatchExpression() != null) {
+			webObjectInstance.setUnindexedProperty("watch",
+					instance.getWatchExpression());
+		}
+		Transaction txn = datastoreService.beginTransaction();
+		try {
+			Key key = datastoreService.put(txn, webObjectInstance);
+			Entity content = new Entity(contentKey(key));
+			content.setProperty("content", new Text(instance.getContent()));
+			datastoreService.put(txn, content);
+			if (queue != null) {
+				queue.add(txn, task);
+			}
+			txn.commit();
+			instance.setId(key.getId());
+		} finally {
+			if (txn.isActive()) {
+				txn.rollback();
+			}
+		}
 	}
 
 	/**
@@ -156,8 +264,7 @@ public class DataStoreService {
 		Filter uriFilter = new FilterPredicate("uri", FilterOperator.EQUAL, uri);
 		Filter timestampFilter = new FilterPredicate("timestamp", FilterOperator.EQUAL, oldTimestamp);
 		Query query = new Query(OBJECT_INSTANCE)
-			.setFilter(uriFilter)
-			.setFilter(timestampFilter);
+			.setFilter(CompositeFilterOperator.and(uriFilter, timestampFilter));
 		Entity instance = datastoreService.prepare(query).asSingleEntity();
 		if (instance == null) {
 			throw new IllegalArgumentException(
@@ -181,16 +288,93 @@ public class DataStoreService {
 
 		List<Entity> instances = datastoreService.prepare(query)
 				.asList(FetchOptions.Builder.withDefaults());
+		return toObjectInstances(instances);
+	}
+
+	/**
+	 * Get a page of the instances of an object retrieved in a time range,
+	 * most recent first
+	 * 
+	 * Instances carry metadata only, their content is loaded from the
+	 * datastore when requested.
+	 * 
+	 * @param uri The URI of the Web object
+	 * @param from The start of the time range (inclusive), or null
+	 * @param to The end of the time range (exclusive), or null
+	 * @param cursor The cursor returned with the previous page, or null to
+	 * get the first page
+	 * @param limit The maximum number of instances in the page
+	 * @return The page of Web instances
+	 */
+	public WebObjectInstancePage getObjectInstances(String uri, Date from,
+			Date to, String cursor, int limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("limit must be positive");
+		}
+		List<Filter> filters = new ArrayList<Filter>();
+		filters.add(new FilterPredicate("uri", FilterOperator.EQUAL, uri));
+		if (from != null) {
+			filters.add(new FilterPredicate("timestamp",
+					FilterOperator.GREATER_THAN_OR_EQUAL, from));
+		}
+		if (to != null) {
+			filters.add(new FilterPredicate("timestamp",
+					FilterOperator.LESS_THAN, to));
+		}
+		Filter filter = filters.size() == 1 ? filters.get(0)
+				: CompositeFilterOperator.and(filters);
+		Query query = new Query(OBJECT_INSTANCE)
+				.setFilter(filter)
+				.addSort("timestamp", SortDirection.DESCENDING);
+		FetchOptions options = FetchOptions.Builder.withLimit(limit);
+		if (cursor != null) {
+			options.startCursor(Cursor.fromWebSafeString(cursor));
+		}
+		QueryResultList<Entity> instances = datastoreService.prepare(query)
+				.asQueryResultList(options);
 		List<WebObjectInstance> instanceList = new ArrayList<WebObjectInstance>();
 		for (Entity e : instances) {
-			String content = ((Text) e.getProperty("content")).getValue();
-			String contentType = (String) e.getProperty("contentType");
-			int statusCode = ((Integer) e.getProperty("statusCode")).intValue();
-			Date timestamp = (Date) e.getProperty("timestamp");
-			instanceList.add(new WebObjectInstance(uri, content, contentType,
-					timestamp, statusCode));
+			instanceList.add(toObjectInstanceMetadata(e));
+		}
+		String nextCursor = null;
+		if (instances.size() == limit && instances.getCursor() != null) {
+			nextCursor = instances.getCursor().toWebSafeString();
+		}
+		return new WebObjectInstancePage(instanceList, nextCursor);
+	}
+
+	/**
+	 * Get a specific instance of an object
+	 * 
+	 * @param id The identifier of the instance
+	 * @return The instance of the Web object, or null if not found
+	 */
+	public WebObjectInstance getObjectInstance(long id) {
+		Key key = KeyFactory.createKey(OBJECT_INSTANCE, id);
+		Map<Key, Entity> entities = datastoreService.get(
+				Arrays.asList(key, contentKey(key)));
+		Entity instance = entities.get(key);
+		if (instance == null) {
+			return null;
+		}
+		return toObjectInstance(instance, entities.get(contentKey(key)));
+	}
+
+	/**
+	 * Get the metadata of a specific instance of an object
+	 * 
+	 * The content is loaded from the datastore only when requested.
+	 * 
+	 * @param id The identifier of the instance
+	 * @return The instance of the Web object, or null if not found
+	 */
+	public WebObjectInstance getObjectInstanceMetadata(long id) {
+		try {
+			return toObjectInstanceMetadata(datastoreService.get(
+					KeyFactory.createKey(OBJECT_INSTANCE, id)));
+		} catch (EntityNotFoundException e) {
+			return null;
 		}
-		return instanceList;
 	}
 
 	/**
@@ -200,25 +384,147 @@ public class DataStoreService {
 	 * @return The instance of the Web object
 	 */
 	public WebObjectInstance getMostRecentObjectInstance(String uri) {
+		Entity mostRecentInstance = getMostRecentObjectInstanceEntity(uri);
+		if (mostRecentInstance == null) {
+			return null;
+		}
+		return toObjectInstances(
+				Collections.singletonList(mostRecentInstance)).get(0);
+	}
+
+	/**
+	 * Get the metadata of the most recent instance of a web object available
+	 * 
+	 * The content is loaded from the datastore only when requested.
+	 * 
+	 * @param uri The URI of the Web object
+	 * @return The instance of the Web object
+	 */
+	public WebObjectInstance getMostRecentObjectInstanceMetadata(String uri) {
+		Entity mostRecentInstance = getMostRecentObjectInstanceEntity(uri);
+		if (mostRecentInstance == null) {
+			return null;
+		}
+		return toObjectInstanceMetadata(mostRecentInstance);
+	}
+
+	private Entity getMostRecentObjectInstanceEntity(String uri) {
 		Filter uriFilter = new FilterPredicate("uri", FilterOperator.EQUAL, uri);
 		Query query = new Query(OBJECT_INSTANCE)
 				.setFilter(uriFilter)
 				.addSort("timestamp", SortDirection.DESCENDING);
 		List<Entity> instances = datastoreService.prepare(query).asList(
-				FetchOptions.Builder.withDefaults());
+				FetchOptions.Builder.withLimit(1));
 		if (instances == null || instances.isEmpty()) {
 			return null;
 		}
-		Entity mostRecentInstance = instances.get(0);
-		String content = ((Text) mostRecentInstance.getProperty("content"))
-				.getValue();
-		String contentType = (String) mostRecentInstance
-				.getProperty("contentType");
-		Date timestamp = (Date) mostRecentInstance.getProperty("timestamp");
-		int statusCode = ((Long) mostRecentInstance.getProperty("statusCode"))
-				.intValue();
-		return new WebObjectInstance(uri, content, contentType, timestamp,
-				statusCode);
+		return instances.get(0);
+	}
+
+	/**
+	 * Build object instances from their datastore entities, loading their
+	 * contents with a single batch get
+	 * 
+	 * @param entities The entities
+	 * @return The instances of the Web object
+	 */
+	private List<WebObjectInstance> toObjectInstances(List<Entity> entities) {
+		List<Key> contentKeys = new ArrayList<Key>();
+		for (Entity e : entities) {
+			if (!e.hasProperty("content")) {
+				contentKeys.add(contentKey(e.getKey()));
+			}
+		}
+		Map<Key, Entity> contents = contentKeys.isEmpty() ?
+				Collections.<Key, Entity>emptyMap() :
+				datastoreService.get(contentKeys);
+		List<WebObjectInstance> instanceList = new ArrayList<WebObjectInstance>();
+		for (Entity e : entities) {
+			instanceList.add(toObjectInstance(e,
+					contents.get(contentKey(e.getKey()))));
+		}
+		return instanceList;
+	}
+
+	/**
+	 * Build an object instance from its datastore entity
+	 * 
+	 * @param e The entity
+	 * @param contentEntity The entity storing the content of the instance,
+	 * or null if the content is stored in the instance entity itself
+	 * @return The instance of the Web object
+	 */
+	private static WebObjectInstance toObjectInstance(Entity e,
+			Entity contentEntity) {
+		String uri = (String) e.getProperty("uri");
+		String content = getContent(e, contentEntity);
+		String contentType = (String) e.getProperty("contentType");
+		Date timestamp = (Date) e.getProperty("timestamp");
+		int statusCode = ((Long) e.getProperty("statusCode")).intValue();
+		WebObjectInstance instance = new WebObjectInstance(uri, content,
+				contentType, timestamp, statusCode);
+		instance.setId(e.getKey().getId());
+		instance.setDigest((String) e.getProperty("digest"));
+		instance.setWatchExpression((String) e.getProperty("watch"));
+		return instance;
+	}
+
+	/**
+	 * Build an object instance from its datastore entity, without retaining
+	 * its content
+	 * 
+	 * @param e The entity
+	 * @return The instance of the Web object, whose content is loaded from
+	 * the datastore when requested
+	 */
+	private WebObjectInstance toObjectInstanceMetadata(Entity e) {
+		String uri = (String) e.getProperty("uri");
+		String contentType = (String) e.getProperty("contentType");
+		Date timestamp = (Date) e.getProperty("timestamp");
+		int statusCode = ((Long) e.getProperty("statusCode")).intValue();
+		/* Instances stored before contents were split from instances keep
+		 * their content, and possibly no digest, in the instance entity */
+		boolean inline = e.hasProperty("content");
+		String digest = (String) e.getProperty("digest");
+		if (digest == null) {
+			digest = WebObjectInstance.digest(getContent(e, null));
+		}
+		WebObjectInstance instance = new WebObjectInstance(uri,
+				new StoredContent(datastoreService,
+						inline ? e.getKey() : contentKey(e.getKey())),
+				contentType, timestamp, statusCode, digest);
+		instance.setId(e.getKey().getId());
+		instance.setWatchExpression((String) e.getProperty("watch"));
+		return instance;
+	}
+
+	/**
+	 * Get the key of the entity storing the content of an object instance
+	 * 
+	 * @param instanceKey The key of the object instance
+	 * @return The key of its content
+	 */
+	private static Key contentKey(Key instanceKey) {
+		return KeyFactory.createKey(instanceKey, OBJECT_INSTANCE_CONTENT,
+				CONTENT_ID);
+	}
+
+	/**
+	 * Get the content of an object instance
+	 * 
+	 * @param e The instance entity
+	 * @param contentEntity The content entity, or null if the content is
+	 * stored in the instance entity
+	 * @return The content
+	 */
+	private static String getContent(Entity e, Entity contentEntity) {
+		Entity source = contentEntity != null ? contentEntity : e;
+		Text content = (Text) source.getProperty("content");
+		if (content == null) {
+			throw new IllegalStateException("Content of object instance "
+					+ e.getKey() + " not found");
+		}
+		return content.getValue();
 	}
 
 	/**
@@ -290,8 +596,7 @@ public class DataStoreService {
 		Filter uriFilter = new FilterPredicate("uri", FilterOperator.EQUAL, uri);
 		Filter emailFilter = new FilterPredicate("email", FilterOperator.EQUAL, email);
 		Query query = new Query(SUBSCRIPTION)
-				.setFilter(emailFilter)
-				.setFilter(uriFilter);
+				.setFilter(CompositeFilterOperator.and(emailFilter, uriFilter));
 		Entity subscription = datastoreService.prepare(query).asSingleEntity();
 		datastoreService.delete(subscription.getKey());
 	}
@@ -308,8 +613,7 @@ public class DataStoreService {
 		Filter uriFilter = new FilterPredicate("uri", FilterOperator.EQUAL, uri);
 		Filter emailFilter = new FilterPredicate("email", FilterOperator.EQUAL, email);
 		Query query = new Query(SUBSCRIPTION)
-				.setFilter(emailFilter)
-				.setFilter(uriFilter);
+				.setFilter(CompositeFilterOperator.and(emailFilter, uriFilter));
 		Entity subscription = datastoreService.prepare(query).asSingleEntity();
 		return (subscription != null);
 
@@ -358,4 +662,37 @@ public class DataStoreService {
 		datastoreService.delete(user.getKey());
 	}
 
+	/**
+	 * Handle to the content of an object instance, loaded from the datastore
+	 * with a single get on every resolution
+	 */
+	private static class StoredContent implements ContentHandle {
+
+		private final DatastoreService datastoreService;
+		private final Key key;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param datastoreService The datastore service
+		 * @param key The key of the entity holding the content
+		 */
+		public StoredContent(DatastoreService datastoreService, Key key) {
+			this.datastoreService = datastoreService;
+			this.key = key;
+		}
+
+		@Override
+		public String resolve() {
+			try {
+				Entity e = datastoreService.get(key);
+				return ((Text) e.getProperty("content")).getValue();
+			} catch (EntityNotFoundException e) {
+				throw new IllegalStateException(
+						"Content " + key + " no longer exists");
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,18 @@
+package io.github.lorenzosaino.webmonitor.services;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+
+/**
+ * Transport sending messages through JavaMail, and hence through the App
+ * Engine mail service
+ */
+public class JavaMailTransport implements MailTransport {
+
+	@Override
+	public void send(Message message) throws MessagingException {
+		Transport.send(message);
+	}
+
+}
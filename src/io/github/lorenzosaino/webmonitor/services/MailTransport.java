@@ -0,0 +1,20 @@
+package io.github.lorenzosaino.webmonitor.services;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+
+/**
+ * Transport delivering notification messages
+ */
+public interface MailTransport {
+
+	/**
+	 * Send a message
+	 * 
+	 * @param message The message
+	 * 
+	 * @throws MessagingException if the message could not be sent
+	 */
+	public void send(Message message) throws MessagingException;
+
+}
@@ -0,0 +1,105 @@
+package io.github.lorenzosaino.webmonitor.services;
+
+import io.github.lorenzosaino.webmonitor.entities.WebObjectInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskOptions;
+
+/**
+ * Outbound notification queue service.
+ *
+ * Notifications are stored in a push queue and delivered by the
+ * notification servlet, so that sending mail never delays polling. A change
+ * is queued as a single fan-out task, which can be added transactionally
+ * with the instance that records the change, and which the fan-out servlet
+ * expands into one notification task per subscriber. The number of
+ * concurrent senders and the retry policy are configured in
+ * <code>queue.xml</code>.
+ */
+public class NotificationQueueService {
+
+	/** Name of the notification queue */
+	public static final String QUEUE_NAME = "notifications";
+	/** URL of the notification servlet draining the queue */
+	public static final String WORKER_URL = "/tasks/notify";
+	/** URL of the servlet expanding a change into notifications */
+	public static final String FAN_OUT_URL = "/tasks/fanout";
+
+	/* Maximum number of tasks added to a queue in a single call */
+	private static final int MAX_BATCH_SIZE = 100;
+
+	private Queue queue = null;
+
+	/**
+	 * Constructor
+	 */
+	public NotificationQueueService() {
+		this.queue = QueueFactory.getQueue(QUEUE_NAME);
+	}
+
+	/**
+	 * Get the notification queue
+	 *
+	 * @return the queue
+	 */
+	public Queue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * Build the fan-out task notifying a change in a Web object to all its
+	 * subscribers
+	 *
+	 * @param uri URI of the page that changed
+	 * @return the task, to be added to the notification queue
+	 */
+	public TaskOptions newFanOutTask(String uri) {
+		return TaskOptions.Builder.withUrl(FAN_OUT_URL).param("uri", uri);
+	}
+
+	/**
+	 * Queue the notification of a change in a Web object to its subscribers
+	 *
+	 * If the name of the fan-out task is given, notification tasks are named
+	 * after it, so that a retried fan-out never notifies a subscriber twice.
+	 *
+	 * @param emails The email addresses of the subscribers
+	 * @param uri URI of the page that changed
+	 * @param fanOutTaskName The name of the fan-out task, or null
+	 */
+	public void enqueue(List<String> emails, String uri, String fanOutTaskName) {
+		List<TaskOptions> tasks = new ArrayList<TaskOptions>(
+				Math.min(emails.size(), MAX_BATCH_SIZE));
+		for (String email : emails) {
+			TaskOptions task = TaskOptions.Builder.withUrl(WORKER_URL)
+					.param("email", email)
+					.param("uri", uri);
+			if (fanOutTaskName != null) {
+				task.taskName(fanOutTaskName + "-"
+						+ WebObjectInstance.digest(email).substring(0, 32));
+			}
+			tasks.add(task);
+			if (tasks.size() == MAX_BATCH_SIZE) {
+				add(tasks);
+				tasks.clear();
+			}
+		}
+		if (!tasks.isEmpty()) {
+			add(tasks);
+		}
+	}
+
+	private void add(List<TaskOptions> tasks) {
+		try {
+			queue.add(tasks);
+		} catch (TaskAlreadyExistsException e) {
+			/* Added by a previous attempt, all others were added now */
+		}
+	}
+
+}
@@ -1,12 +1,15 @@
 package io.github.lorenzosaino.webmonitor.services;
 
 import java.io.UnsupportedEncodingException;
+import java.util.Locale;
 import java.util.Properties;
 
+import javax.mail.Address;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
-import javax.mail.Transport;
+import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
@@ -17,42 +20,103 @@ public class NotificationService {
 
 	private String senderName = null;
 	private String senderEmail = null;
-	
+	private MailTransport transport = null;
+	/* Mail session shared by all messages */
+	private Session session = null;
+
 	/**
 	 * Constructor
-	 * 
+	 *
 	 * @param senderName
 	 * @param senderEmail
 	 */
 	public NotificationService(String senderName, String senderEmail) {
+		this(senderName, senderEmail, new JavaMailTransport());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param senderName
+	 * @param senderEmail
+	 * @param transport The transport the messages are sent with
+	 */
+	public NotificationService(String senderName, String senderEmail,
+			MailTransport transport) {
+		if (transport == null) {
+			throw new IllegalArgumentException("transport cannot be null");
+		}
 		this.senderName = senderName;
 		this.senderEmail = senderEmail;
+		this.transport = transport;
+		this.session = Session.getInstance(new Properties(), null);
 	}
-	
+
 	/**
 	 * Notify a user about a change in a Web object it subscribed to
-	 * 
+	 *
 	 * @param email User email address
 	 * @param uri URI of the page that changed
+	 *
+	 * @throws IllegalArgumentException if the notification can never be
+	 * delivered, e.g. because of an invalid address or an unauthorized
+	 * sender
+	 * @throws MessagingException if the notification could not be delivered
+	 * but may be on a later attempt
 	 */
-	public void notifyUser(String email, String uri) {
-        Properties props = new Properties();
-        Session session = Session.getDefaultInstance(props, null);
-        session.setDebug(true);
-        
+	public void notifyUser(String email, String uri) throws MessagingException {
         String msgBody = "The webpage " + uri + " has changed";
 
+        Message msg = new MimeMessage(session);
         try {
-            Message msg = new MimeMessage(session);
             msg.setFrom(new InternetAddress(this.senderEmail, this.senderName));
             msg.addRecipient(Message.RecipientType.TO,
                              new InternetAddress(email));
-            msg.setSubject("Web page " + uri + " has changed");
-            msg.setText(msgBody);
-            Transport.send(msg);
-        } catch (MessagingException|UnsupportedEncodingException e) {
+        } catch (AddressException|UnsupportedEncodingException e) {
         	throw new IllegalArgumentException(e.getMessage());
-        } 
+        }
+        msg.setSubject("Web page " + uri + " has changed");
+        msg.setText(msgBody);
+        try {
+            transport.send(msg);
+        } catch (MessagingException e) {
+        	if (isPermanent(e)) {
+        		throw new IllegalArgumentException(e.getMessage(), e);
+        	}
+        	throw e;
+        }
 	}
-	
+
+	/**
+	 * Check whether a send failure would occur again on any later attempt.
+	 *
+	 * Besides invalid recipients, the App Engine mail service rejects
+	 * unauthorized senders and malformed messages with an
+	 * IllegalArgumentException, which the transport reports as the cause of
+	 * a MessagingException.
+	 *
+	 * @param e The send failure
+	 * @return true if the failure is permanent, false otherwise
+	 */
+	private static boolean isPermanent(MessagingException e) {
+		if (e instanceof SendFailedException) {
+			Address[] invalid = ((SendFailedException) e).getInvalidAddresses();
+			if (invalid != null && invalid.length > 0) {
+				return true;
+			}
+		}
+		/* The cause of a MessagingException is its next exception */
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof IllegalArgumentException) {
+				return true;
+			}
+			String message = t.getMessage();
+			if (message != null && message.toLowerCase(Locale.ROOT)
+					.contains("unauthorized sender")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
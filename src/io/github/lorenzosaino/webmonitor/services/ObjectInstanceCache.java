@@ -0,0 +1,95 @@
+package io.github.lorenzosaino.webmonitor.services;
+
+import io.github.lorenzosaino.webmonitor.entities.CompressedContent;
+import io.github.lorenzosaino.webmonitor.entities.ContentHandle;
+import io.github.lorenzosaino.webmonitor.entities.WebObjectInstance;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * In-process cache of object instances, bounded by the total compressed
+ * size of their contents and evicting the least recently used instance
+ * first.
+ *
+ * The content of a stored instance never changes, so cached instances are
+ * never invalidated.
+ */
+public class ObjectInstanceCache {
+
+	private final long maxBytes;
+	private final LinkedHashMap<Long, WebObjectInstance> instances =
+			new LinkedHashMap<Long, WebObjectInstance>(16, 0.75f, true);
+	private long bytes = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxBytes The maximum total compressed size of the contents
+	 * cached, in bytes
+	 */
+	public ObjectInstanceCache(long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be positive");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Get a cached instance
+	 *
+	 * @param id The identifier of the instance
+	 * @return the instance, or null if not cached
+	 */
+	public synchronized WebObjectInstance get(long id) {
+		return instances.get(id);
+	}
+
+	/**
+	 * Cache an instance. Instances larger than the whole cache are not
+	 * cached.
+	 *
+	 * @param instance The instance, which must have been stored already
+	 */
+	public synchronized void put(WebObjectInstance instance) {
+		if (instance.getId() == null) {
+			throw new IllegalArgumentException("Instance has not been stored");
+		}
+		long size = sizeOf(instance);
+		if (size > maxBytes) {
+			return;
+		}
+		WebObjectInstance previous = instances.put(instance.getId(), instance);
+		if (previous != null) {
+			bytes -= sizeOf(previous);
+		}
+		bytes += size;
+		Iterator<WebObjectInstance> eldest = instances.values().iterator();
+		while (bytes > maxBytes) {
+			bytes -= sizeOf(eldest.next());
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Get the total compressed size of the contents cached
+	 *
+	 * @return the size in bytes
+	 */
+	public synchronized long getSize() {
+		return bytes;
+	}
+
+	/**
+	 * Get the size an instance takes in the cache. Instances whose content
+	 * is not held in memory take no space.
+	 */
+	private static long sizeOf(WebObjectInstance instance) {
+		ContentHandle content = instance.getContentHandle();
+		if (content instanceof CompressedContent) {
+			return ((CompressedContent) content).getCompressedSize();
+		}
+		return 0;
+	}
+
+}
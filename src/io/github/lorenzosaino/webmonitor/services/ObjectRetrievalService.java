@@ -1,14 +1,23 @@
 package io.github.lorenzosaino.webmonitor.services;
 
+import io.github.lorenzosaino.webmonitor.entities.CompressedContent;
 import io.github.lorenzosaino.webmonitor.entities.WebObjectInstance;
+import io.github.lorenzosaino.webmonitor.extractors.ContentExtractor;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Date;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * Object retrieval service
@@ -29,15 +38,38 @@ public class ObjectRetrievalService {
 	/**
 	 * Retrieve an object
 	 * 
+	 * The content is compressed and digested while it is read, so that it is
+	 * never held uncompressed in memory.
+	 * 
+	 * @param uri The URI of the object
+	 * 
+	 * @return The instance of the object retrieved
+	 * 
+	 * @throws IOException if the object cannot be retrieved due to I/O problems
+	 */
+	public WebObjectInstance retrieveObject(String uri) throws IOException {
+		return retrieveObject(uri, null);
+	}
+
+	/**
+	 * Retrieve the region of an object selected by an extractor
+	 * 
+	 * The extractor is evaluated while the content is read and the transfer
+	 * is interrupted as soon as the region is extracted. Only the region is
+	 * kept, and it is empty if the extractor did not find it.
+	 * 
 	 * @param uri The URI of the object
+	 * @param extractor The extractor, or null to retrieve the whole object
 	 * 
 	 * @return The instance of the object retrieved
 	 * 
 	 * @throws IOException if the object cannot be retrieved due to I/O problems
 	 */
-	public WebObjectInstance retrieveObject(String uri) throws IOException {		
+	public WebObjectInstance retrieveObject(String uri,
+			ContentExtractor extractor) throws IOException {
 		
-		String content = null;
+		CompressedContent content = null;
+		String digest = null;
 		String contentType = null;
 		int statusCode = 0;
 		Date timestamp = null;
@@ -47,26 +79,44 @@ public class ObjectRetrievalService {
 		connection.setRequestProperty("User-Agent", this.userAgent);
 		connection.setRequestProperty("Connection", "close");
 		connection.setInstanceFollowRedirects(true); // it is already the default
-		InputStream in = connection.getInputStream();
-		contentType = connection.getContentType();
-		statusCode  = connection.getResponseCode();
-		StringBuilder contentBuilder = new StringBuilder();
-	    BufferedReader reader = new BufferedReader(new InputStreamReader(in));;
-	    String currentLine = null;
-	    while ((currentLine = reader.readLine()) != null) {
-	    	contentBuilder.append(currentLine);
-	    }
-	    if(in != null) {
-	    	in.close();
-	    }
-	    if (connection != null) {
-	    	connection.disconnect();
-	    }
+		InputStream in = null;
+		try {
+			in = connection.getInputStream();
+			contentType = connection.getContentType();
+			statusCode  = connection.getResponseCode();
+			if (extractor != null) {
+				String fragment = extractor.extract(new InputStreamReader(in));
+				if (fragment == null) {
+					fragment = "";
+				}
+				content = CompressedContent.compress(fragment);
+				digest = WebObjectInstance.digest(fragment);
+			} else {
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+				MessageDigest md = WebObjectInstance.newMessageDigest();
+				Writer writer = new OutputStreamWriter(new DigestOutputStream(
+						new DeflaterOutputStream(compressed), md),
+						StandardCharsets.UTF_8);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+				String currentLine = null;
+				while ((currentLine = reader.readLine()) != null) {
+					writer.write(currentLine);
+				}
+				writer.close();
+				content = new CompressedContent(compressed.toByteArray());
+				digest = WebObjectInstance.toHex(md.digest());
+			}
+		} finally {
+			/* Also release the connection if the transfer fails midway */
+			if (in != null) {
+				in.close();
+			}
+			connection.disconnect();
+		}
 		timestamp = new Date();
-		content = contentBuilder.toString();
 		
 		return new WebObjectInstance(uri, content, contentType, 
-				timestamp, statusCode);
+				timestamp, statusCode, digest);
 	}
 
 }
@@ -0,0 +1,107 @@
+package io.github.lorenzosaino.webmonitor.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Test;
+
+public class CompressedContentTest {
+
+	private static String roundTrip(String content) {
+		return CompressedContent.compress(content).resolve();
+	}
+
+	/**
+	 * Deflate a string as the retrieval service does while reading a page
+	 */
+	private static byte[] deflate(String content) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		DeflaterOutputStream out = new DeflaterOutputStream(compressed);
+		out.write(content.getBytes(StandardCharsets.UTF_8));
+		out.close();
+		return compressed.toByteArray();
+	}
+
+	/**
+	 * Build a string of random letters, which compresses poorly
+	 */
+	private static String randomText(int length) {
+		Random random = new Random(42);
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append((char) ('a' + random.nextInt(26)));
+		}
+		return text.toString();
+	}
+
+	@Test
+	public void emptyContent() {
+		assertEquals("", roundTrip(""));
+		assertTrue(CompressedContent.compress("").getCompressedSize() > 0);
+	}
+
+	@Test
+	public void nonAsciiContent() {
+		/* Supplementary characters are encoded as surrogate pairs */
+		String content = "caf\u00e9 \u20ac \u65e5\u672c\u8a9e "
+				+ "\ud83d\ude00 \ud834\udd1e";
+		assertEquals(content, roundTrip(content));
+	}
+
+	@Test
+	public void contentLargerThanTheBuffer() {
+		String random = randomText(100000);
+		assertEquals(random, roundTrip(random));
+
+		StringBuilder repeated = new StringBuilder();
+		while (repeated.length() < 100000) {
+			repeated.append("<p>\u00e9t\u00e9 \ud83d\ude00</p>\n");
+		}
+		String content = repeated.toString();
+		CompressedContent compressed = CompressedContent.compress(content);
+		assertEquals(content, compressed.resolve());
+		assertTrue(compressed.getCompressedSize() < 4096);
+	}
+
+	@Test
+	public void streamedContentIsResolved() throws IOException {
+		String content = randomText(10000) + " \u00e9\ud83d\ude00";
+		assertEquals(content, new CompressedContent(deflate(content)).resolve());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void truncatedContent() throws IOException {
+		byte[] data = deflate(randomText(10000));
+		new CompressedContent(Arrays.copyOf(data, data.length / 2)).resolve();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void truncatedTrailer() throws IOException {
+		byte[] data = deflate("content");
+		new CompressedContent(Arrays.copyOf(data, data.length - 1)).resolve();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void noData() {
+		new CompressedContent(new byte[0]).resolve();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void corruptContent() {
+		new CompressedContent("not deflated".getBytes(
+				StandardCharsets.US_ASCII)).resolve();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullData() {
+		new CompressedContent(null);
+	}
+
+}
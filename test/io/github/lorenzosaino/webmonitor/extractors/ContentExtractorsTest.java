@@ -0,0 +1,46 @@
+package io.github.lorenzosaino.webmonitor.extractors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class ContentExtractorsTest {
+
+	private static final String HTML = "<div id=\"a\"><p>x</p></div>";
+
+	private static String extract(String expression, String content)
+			throws IOException {
+		return ContentExtractors.forWatchExpression(expression).extract(
+				new StringReader(content));
+	}
+
+	@Test
+	public void explicitLanguages() throws IOException {
+		assertEquals("<p>x</p>", extract("css:#a > p", HTML));
+		assertEquals("<p>x</p>", extract("xpath://div[@id='a']/p", HTML));
+		assertEquals("1", extract("json:$.a", "{\"a\": 1}"));
+	}
+
+	@Test
+	public void guessedLanguages() throws IOException {
+		assertTrue(ContentExtractors.forWatchExpression(" $.a ")
+				instanceof JsonExtractor);
+		assertEquals("<p>x</p>", extract("//p", HTML));
+		assertEquals("<p>x</p>", extract("div p", HTML));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullExpression() {
+		ContentExtractors.forWatchExpression(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedExpression() {
+		ContentExtractors.forWatchExpression("css:a:hover");
+	}
+
+}
@@ -0,0 +1,57 @@
+package io.github.lorenzosaino.webmonitor.extractors;
+
+import java.io.Reader;
+
+/**
+ * Reader serving a prefix followed by filler text, counting the characters
+ * read so that tests can check extractors stop early.
+ */
+class CountingReader extends Reader {
+
+	private final String prefix;
+	private final String filler;
+	private final long length;
+	private long position = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param prefix The text served first
+	 * @param filler The text repeated after the prefix
+	 * @param length The total number of characters served
+	 */
+	public CountingReader(String prefix, String filler, long length) {
+		this.prefix = prefix;
+		this.filler = filler;
+		this.length = length;
+	}
+
+	/**
+	 * Get the number of characters read
+	 *
+	 * @return the number of characters
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int count) {
+		if (position >= length) {
+			return -1;
+		}
+		int n = (int) Math.min(count, length - position);
+		for (int i = 0; i < n; i++, position++) {
+			buffer[offset + i] = position < prefix.length() ?
+					prefix.charAt((int) position) :
+					filler.charAt((int) ((position - prefix.length())
+							% filler.length()));
+		}
+		return n;
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
@@ -0,0 +1,251 @@
+package io.github.lorenzosaino.webmonitor.extractors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class HtmlExtractorTest {
+
+	private static String css(String selector, String html) throws IOException {
+		return HtmlExtractor.fromCssSelector(selector).extract(
+				new StringReader(html));
+	}
+
+	private static String xpath(String xpath, String html) throws IOException {
+		return HtmlExtractor.fromXPath(xpath).extract(new StringReader(html));
+	}
+
+	@Test
+	public void cssTypeSelector() throws IOException {
+		assertEquals("<p>Hi <b>there</b></p>",
+				css("p", "<html><body><p>Hi <b>there</b></p><p>No</p></body></html>"));
+	}
+
+	@Test
+	public void cssTagNamesAreCaseInsensitive() throws IOException {
+		assertEquals("<P>Hi</P>", css("p", "<BODY><P>Hi</P></BODY>"));
+	}
+
+	@Test
+	public void cssIdAndClassSelectors() throws IOException {
+		String html = "<div class=\"item\"><span class=\"price\">1</span></div>"
+				+ "<div id=\"main\"><span class=\"old price\">2</span></div>";
+		assertEquals("<span class=\"old price\">2</span>",
+				css("div#main > span.price", html));
+		assertEquals("<span class=\"price\">1</span>", css(".price", html));
+	}
+
+	@Test
+	public void cssUniversalSelector() throws IOException {
+		assertEquals("<em>x</em>", css("p > *", "<p><em>x</em></p>"));
+	}
+
+	@Test
+	public void cssAttributeSelectors() throws IOException {
+		String html = "<a>none</a><a href=\"/y\">y</a><a href='/x'>x</a>";
+		assertEquals("<a href=\"/y\">y</a>", css("a[href]", html));
+		assertEquals("<a href='/x'>x</a>", css("a[href='/x']", html));
+		assertEquals("<a href='/x'>x</a>", css("a[href=\"/x\"]", html));
+	}
+
+	@Test
+	public void cssAttributeValueEndingWithSlash() throws IOException {
+		assertEquals("<a href=/x/>L</a>", css("a[href=/x/]", "<a href=/x/>L</a>"));
+	}
+
+	@Test
+	public void cssChildAndDescendantCombinators() throws IOException {
+		String html = "<div><section><p>deep</p></section><p>child</p></div>";
+		assertEquals("<p>child</p>", css("div > p", html));
+		assertEquals("<p>deep</p>", css("div p", html));
+	}
+
+	@Test
+	public void cssUnsupportedSelectors() {
+		String[] unsupported = { "a:hover", "a + b", "a ~ b", "> a", "a >",
+				"", "p[class", "::before" };
+		for (String selector : unsupported) {
+			try {
+				HtmlExtractor.fromCssSelector(selector);
+				throw new AssertionError("Accepted " + selector);
+			} catch (IllegalArgumentException e) {
+				/* Expected */
+			}
+		}
+	}
+
+	@Test
+	public void xpathChildAndDescendantSteps() throws IOException {
+		String html = "<html><body><div id='main'><p><span>a</span></p>"
+				+ "<span>b</span></div></body></html>";
+		assertEquals("<span>b</span>", xpath("//div[@id='main']/span", html));
+		assertEquals("<span>a</span>", xpath("//div//span", html));
+		assertEquals("<div id='main'><p><span>a</span></p><span>b</span></div>",
+				xpath("/html/body/div", html));
+		assertNull(xpath("/body", html));
+	}
+
+	@Test
+	public void xpathAttributePredicates() throws IOException {
+		String html = "<p>x</p><p lang=\"en\">y</p><p lang=\"it\">z</p>";
+		assertEquals("<p lang=\"en\">y</p>", xpath("//p[@lang]", html));
+		assertEquals("<p lang=\"it\">z</p>", xpath("//p[@lang='it']", html));
+		assertEquals("<p lang=\"it\">z</p>", xpath("//*[@lang=\"it\"]", html));
+	}
+
+	@Test
+	public void xpathUnsupportedExpressions() {
+		String[] unsupported = { "p", "//p[1]", "//p/text()", "//", "//p[@a" };
+		for (String expression : unsupported) {
+			try {
+				HtmlExtractor.fromXPath(expression);
+				throw new AssertionError("Accepted " + expression);
+			} catch (IllegalArgumentException e) {
+				/* Expected */
+			}
+		}
+	}
+
+	@Test
+	public void notFound() throws IOException {
+		assertNull(css("table", "<p>x</p>"));
+		assertNull(css("p", ""));
+	}
+
+	@Test
+	public void unclosedMatchRunsToEndOfInput() throws IOException {
+		assertEquals("<p>x", css("p", "<body><p>x"));
+	}
+
+	@Test
+	public void slashDoesNotCloseNonVoidElements() throws IOException {
+		String html = "<div/><span>x</span></div>";
+		assertEquals(html, css("div", html));
+		assertEquals("<span>x</span>", css("div > span", html));
+	}
+
+	@Test
+	public void voidElementsHaveNoContent() throws IOException {
+		assertEquals("<span>x</span>", css("p > span", "<p><br><img src=a><span>x</span></p>"));
+		assertEquals("<span>x</span>", css("p > span", "<p><br/><img src=\"a\"/><span>x</span></p>"));
+		assertEquals("<br/>", css("br", "<p><br/>x</p>"));
+	}
+
+	@Test
+	public void slashClosesForeignElements() throws IOException {
+		String html = "<svg><circle r=\"1\"/><text>t</text></svg>";
+		assertEquals("<text>t</text>", css("svg > text", html));
+		assertEquals("<circle r=\"1\"/>", xpath("//svg/circle", html));
+	}
+
+	@Test
+	public void paragraphsAreImplicitlyClosed() throws IOException {
+		String html = "<div><p class=a>a<p class=b>b</div><p>c</p>";
+		assertEquals("<p class=a>a", css("p.a", html));
+		assertEquals("<p class=b>b", css("p.b", html));
+		assertEquals("<p class=b>b", css("div > p.b", html));
+	}
+
+	@Test
+	public void listItemsAreImplicitlyClosed() throws IOException {
+		String html = "<ul><li>1<li id=two>2<li>3</ul>";
+		assertEquals("<li id=two>2", css("li#two", html));
+		assertEquals("<li id=two>2", css("ul > li#two", html));
+	}
+
+	@Test
+	public void nestedListItemsAreNotClosed() throws IOException {
+		String html = "<ul><li>a<ul><li>b<li>c</ul><li>d</ul>";
+		assertEquals("<li>a<ul><li>b<li>c</ul>", css("li", html));
+		assertNull(css("li li li", html));
+		assertEquals("<li>b", css("li li", html));
+	}
+
+	@Test
+	public void tableRowsAndCellsAreImplicitlyClosed() throws IOException {
+		String html = "<table><tr><td>a<td>b<tr><td>c<th>d</table><p>e</p>";
+		assertEquals("<tr><td>a<td>b", css("tr", html));
+		assertNull(css("tr tr", html));
+		assertNull(css("td td", html));
+		assertEquals("<th>d", css("tr > th", html));
+		assertEquals("<td>a", xpath("/table/tr/td", html));
+	}
+
+	@Test
+	public void tableSectionsAreImplicitlyClosed() throws IOException {
+		String html = "<table><thead><tr><th>h<tbody><tr><td>a<tr><td>b"
+				+ "<tfoot><tr><td>f</table>";
+		assertEquals("<thead><tr><th>h", css("thead", html));
+		assertEquals("<tbody><tr><td>a<tr><td>b", css("tbody", html));
+		assertNull(css("thead td", html));
+		assertEquals("<td>f", css("tfoot td", html));
+	}
+
+	@Test
+	public void nestedTablesAreNotClosed() throws IOException {
+		String html = "<table><tr><td><table><tr><td>in</table>"
+				+ "<td class=o>out</table>";
+		assertEquals("<td><table><tr><td>in</table>", css("td", html));
+		assertEquals("<td>in", css("td td", html));
+		assertEquals("<td class=o>out", xpath("/table/tr/td[@class='o']", html));
+	}
+
+	@Test
+	public void deeplyNestedElements() throws IOException {
+		StringBuilder divs = new StringBuilder();
+		StringBuilder groups = new StringBuilder("<svg>");
+		for (int i = 0; i < 5000; i++) {
+			divs.append("<div>");
+			groups.append("<g>");
+		}
+		String html = divs + "<span>x</span>";
+		assertEquals("<span>x</span>", css("div div div span", html));
+		assertNull(css("span div div div", html));
+		assertNull(xpath("//div/span/div", html));
+		assertEquals("<text>t</text>",
+				css("g > text", groups + "<rect/><text>t</text>"));
+	}
+
+	@Test
+	public void rawTextElementsAreNotParsed() throws IOException {
+		String html = "<script>var s = \"<p>no</p>\";</script><p>yes</p>";
+		assertEquals("<p>yes</p>", css("p", html));
+		assertEquals("<script>var s = \"<p>no</p>\";</script>",
+				css("script", html));
+		assertEquals("<title>a <b> c</title>", css("title", "<title>a <b> c</title>"));
+		assertEquals("<style>p > a {}</STYLE >",
+				css("style", "<style>p > a {}</STYLE ><p>x</p>"));
+	}
+
+	@Test
+	public void commentsAreNotParsed() throws IOException {
+		String html = "<!-- <p>no</p> --><!doctype html><p>yes<!-- </p> --></p>";
+		assertEquals("<p>yes<!-- </p> --></p>", css("p", html));
+	}
+
+	@Test
+	public void quotedAngleBracketsInAttributes() throws IOException {
+		assertEquals("<p title=\"a>b\">x</p>",
+				css("p[title='a>b']", "<p title=\"a>b\">x</p>"));
+	}
+
+	@Test
+	public void strayEndTagsAndLessThanSigns() throws IOException {
+		assertEquals("<p>1 < 2</span></p>", css("p", "<p>1 < 2</span></p>"));
+	}
+
+	@Test
+	public void stopsReadingAfterMatch() throws IOException {
+		CountingReader reader = new CountingReader("<body><p>x</p>",
+				"<div>filler</div>", 10000000);
+		assertEquals("<p>x</p>", HtmlExtractor.fromCssSelector("p")
+				.extract(reader));
+		assertTrue(reader.getPosition() < 100000);
+	}
+
+}
@@ -0,0 +1,127 @@
+package io.github.lorenzosaino.webmonitor.extractors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class JsonExtractorTest {
+
+	private static String json(String path, String json) throws IOException {
+		return new JsonExtractor(path).extract(new StringReader(json));
+	}
+
+	@Test
+	public void rootValue() throws IOException {
+		assertEquals("{\"a\": 1}", json("$", " {\"a\": 1} "));
+	}
+
+	@Test
+	public void memberSteps() throws IOException {
+		String doc = "{\"a\": {\"b\": 1, \"c\": [true, null]}, \"d\": -1.5e3}";
+		assertEquals("1", json("$.a.b", doc));
+		assertEquals("[true, null]", json("$.a.c", doc));
+		assertEquals("-1.5e3", json("$.d", doc));
+		assertEquals("1", json("$['a'][\"b\"]", doc));
+	}
+
+	@Test
+	public void bracketedMemberNames() throws IOException {
+		assertEquals("2", json("$['a b'].c", "{\"a b\": {\"c\": 2}}"));
+	}
+
+	@Test
+	public void arrayIndexes() throws IOException {
+		String doc = "{\"items\": [1, [2, 3], {\"x\": \"y\"}]}";
+		assertEquals("1", json("$.items[0]", doc));
+		assertEquals("3", json("$.items[1][1]", doc));
+		assertEquals("\"y\"", json("$.items[2].x", doc));
+		assertNull(json("$.items[3]", doc));
+	}
+
+	@Test
+	public void stringsAreReturnedRaw() throws IOException {
+		assertEquals("\"q\\\"\\u00e9\\\\\"",
+				json("$.s", "{\"s\": \"q\\\"\\u00e9\\\\\"}"));
+	}
+
+	@Test
+	public void escapesInSkippedStrings() throws IOException {
+		String doc = "{\"x\": \"}{][\\\",\", \"a\\\"b\": 0, \"y\": 2}";
+		assertEquals("2", json("$.y", doc));
+	}
+
+	@Test
+	public void escapedMemberNames() throws IOException {
+		assertEquals("1", json("$['a\"b']", "{\"a\\\"b\": 1}"));
+		assertEquals("2", json("$['\u00e9']", "{\"\\u00e9\": 2}"));
+	}
+
+	@Test
+	public void notFound() throws IOException {
+		assertNull(json("$.b", "{\"a\": 1}"));
+		assertNull(json("$[0]", "{\"a\": 1}"));
+		assertNull(json("$.a", "[1]"));
+		assertNull(json("$.a", ""));
+	}
+
+	@Test
+	public void malformedInput() throws IOException {
+		assertNull(json("$.b", "{\"a\": }"));
+		assertNull(json("$.a", "{\"a\" 1}"));
+		assertNull(json("$", "<html>"));
+		assertNull(json("$.a", "{\"a\": tru}"));
+		assertNull(json("$.a", "{\"a\": 01}"));
+	}
+
+	@Test
+	public void deeplyNestedValues() throws IOException {
+		StringBuilder nested = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			nested.append(i % 2 == 0 ? "[" : "{\"k\": ");
+		}
+		nested.append('0');
+		for (int i = 100000 - 1; i >= 0; i--) {
+			nested.append(i % 2 == 0 ? "]" : "}");
+		}
+		String doc = "{\"deep\": " + nested + ", \"b\": 1}";
+		assertEquals("1", json("$.b", doc));
+		assertEquals(nested.toString(), json("$.deep", doc));
+		assertNull(json("$.b", "{\"deep\": " + nested.substring(0, 100000)
+				+ ", \"b\": 1}"));
+	}
+
+	@Test
+	public void nestedValuesAreCapturedRaw() throws IOException {
+		String value = "{ \"a\" : [ 1 , {\"b\": \"]}\"} , [ ] , { } ] }";
+		assertEquals(value, json("$.x", "{\"x\": " + value + " }"));
+		assertNull(json("$.x", "{\"x\": [1, ], \"y\": 2}"));
+		assertNull(json("$.y", "{\"x\": {\"a\": 1, }, \"y\": 2}"));
+	}
+
+	@Test
+	public void unsupportedPaths() {
+		String[] unsupported = { "a", "$.", "$[", "$[*]", "$..a", "$[?(@.a)]" };
+		for (String path : unsupported) {
+			try {
+				new JsonExtractor(path);
+				throw new AssertionError("Accepted " + path);
+			} catch (IllegalArgumentException e) {
+				/* Expected */
+			}
+		}
+	}
+
+	@Test
+	public void stopsReadingAfterMatch() throws IOException {
+		CountingReader reader = new CountingReader(
+				"{\"a\": {\"b\": [1, 2]}, \"rest\": [", "0, ", 10000000);
+		assertEquals("[1, 2]", new JsonExtractor("$.a.b").extract(reader));
+		assertTrue(reader.getPosition() < 100000);
+	}
+
+}
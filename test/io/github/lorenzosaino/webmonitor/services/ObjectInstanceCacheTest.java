@@ -0,0 +1,113 @@
+package io.github.lorenzosaino.webmonitor.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.github.lorenzosaino.webmonitor.entities.CompressedContent;
+import io.github.lorenzosaino.webmonitor.entities.WebObjectInstance;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+public class ObjectInstanceCacheTest {
+
+	/**
+	 * Build a stored instance whose content takes the given number of bytes
+	 */
+	private static WebObjectInstance instance(long id, int size) {
+		WebObjectInstance instance = new WebObjectInstance("http://example.com/",
+				new CompressedContent(new byte[size]), "text/html", new Date(),
+				200, null);
+		instance.setId(id);
+		return instance;
+	}
+
+	@Test
+	public void cachedInstancesAreCounted() {
+		ObjectInstanceCache cache = new ObjectInstanceCache(100);
+		WebObjectInstance a = instance(1, 30);
+		cache.put(a);
+		cache.put(instance(2, 20));
+		assertSame(a, cache.get(1));
+		assertNull(cache.get(3));
+		assertEquals(50, cache.getSize());
+	}
+
+	@Test
+	public void replacingAnEntryCountsOnlyTheNewInstance() {
+		ObjectInstanceCache cache = new ObjectInstanceCache(100);
+		cache.put(instance(1, 30));
+		WebObjectInstance replacement = instance(1, 50);
+		cache.put(replacement);
+		assertSame(replacement, cache.get(1));
+		assertEquals(50, cache.getSize());
+		cache.put(instance(1, 10));
+		assertEquals(10, cache.getSize());
+	}
+
+	@Test
+	public void leastRecentlyUsedInstancesAreEvictedUntilTheTotalFits() {
+		ObjectInstanceCache cache = new ObjectInstanceCache(100);
+		cache.put(instance(1, 40));
+		cache.put(instance(2, 40));
+		cache.get(1);
+		cache.put(instance(3, 40));
+		assertNull(cache.get(2));
+		assertEquals(80, cache.getSize());
+
+		cache.put(instance(4, 90));
+		assertNull(cache.get(1));
+		assertNull(cache.get(3));
+		assertEquals(90, cache.getSize());
+	}
+
+	@Test
+	public void growingAnEntryEvictsOthers() {
+		ObjectInstanceCache cache = new ObjectInstanceCache(100);
+		cache.put(instance(1, 40));
+		cache.put(instance(2, 40));
+		cache.put(instance(1, 70));
+		assertNull(cache.get(2));
+		assertEquals(70, cache.getSize());
+	}
+
+	@Test
+	public void instancesLargerThanTheCacheAreSkipped() {
+		ObjectInstanceCache cache = new ObjectInstanceCache(100);
+		WebObjectInstance a = instance(1, 10);
+		cache.put(a);
+		cache.put(instance(2, 101));
+		assertNull(cache.get(2));
+		assertSame(a, cache.get(1));
+		assertEquals(10, cache.getSize());
+
+		cache.put(instance(3, 100));
+		assertNull(cache.get(1));
+		assertEquals(100, cache.getSize());
+	}
+
+	@Test
+	public void instancesWithoutResidentContentTakeNoSpace() {
+		ObjectInstanceCache cache = new ObjectInstanceCache(100);
+		WebObjectInstance metadata = new WebObjectInstance("http://example.com/",
+				null, "text/html", new Date(), 200, "digest");
+		metadata.setId(1L);
+		cache.put(metadata);
+		assertSame(metadata, cache.get(1));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unstoredInstancesAreRejected() {
+		new ObjectInstanceCache(100).put(new WebObjectInstance(
+				"http://example.com/", "content", "text/html", new Date(), 200));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sizeMustBePositive() {
+		new ObjectInstanceCache(0);
+	}
+
+}